@@ -0,0 +1,252 @@
+package dcit204.map;
+
+import java.util.*;
+
+// Diverse alternative routes by the plateau method.
+// One forward tree from the start and one backward tree to the destination are grown, both
+// bounded by the longest acceptable route. An edge u -> v lies on a plateau when it is in
+// both trees (v's forward parent is u and u's backward parent is v); a maximal chain of
+// such edges is a plateau, and start -> plateau -> destination is a locally optimal route.
+// Long plateaus make good alternatives because the route is shortest along all of it.
+// Candidates are taken longest plateau first and kept only if they share at most
+// maxOverlap of their length with each route chosen before them, taken one at a time.
+//
+// All candidates come from the same two searches, however many alternatives are asked for, and
+// findWithShortest takes the shortest route from them as well: its plateau is the whole route.
+// Both trees live in pooled search workspaces and only the nodes they settled are scanned,
+// so a query costs what the bounded searches reach, not the size of the graph.
+public class AlternativeRoutes {
+    public static final double DEFAULT_MAX_OVERLAP = 0.7;
+    public static final double DEFAULT_MAX_STRETCH = 1.4;
+
+    private final CampusGraph graph;
+    private final double maxOverlap;
+    private final double maxStretch;
+
+    public AlternativeRoutes(CampusGraph graph) {
+        this(graph, DEFAULT_MAX_OVERLAP, DEFAULT_MAX_STRETCH);
+    }
+
+    // maxOverlap: largest fraction of a route's length it may share with any one earlier
+    // route; maxStretch: longest route allowed, as a multiple of the shortest distance
+    public AlternativeRoutes(CampusGraph graph, double maxOverlap, double maxStretch) {
+        this.graph = graph;
+        this.maxOverlap = maxOverlap;
+        this.maxStretch = maxStretch;
+    }
+
+    // Up to count alternatives that differ enough from each other and from the existing routes.
+    // shortestDistance is the length of the shortest route, which callers have already found.
+    public List<KShortestPaths.Path> find(int start, int destination, double shortestDistance,
+                                          int count, List<int[]> existing) {
+        List<KShortestPaths.Path> result = new ArrayList<>();
+        if (count <= 0 || start == destination) {
+            return result;
+        }
+
+        // Nothing farther than the stretch bound can be on an acceptable route. Both trees stay
+        // in pooled workspaces, so a query allocates nothing proportional to the graph.
+        double limit = shortestDistance * maxStretch;
+        SearchWorkspace forwardSearch = SearchWorkspace.acquire(graph.nodeCount());
+        SearchWorkspace backwardSearch = SearchWorkspace.acquire(graph.nodeCount());
+        try {
+            ShortestPathTree fromStart = ShortestPathTree.forward(graph, start, limit, forwardSearch);
+            ShortestPathTree toDestination = ShortestPathTree.backward(graph, destination, limit, backwardSearch);
+            if (fromStart.isReachable(destination)) {
+                int settled = fromStart.getSettledNodes() + toDestination.getSettledNodes();
+                addAlternatives(result, fromStart, toDestination, limit, count, existing, settled);
+            }
+            return result;
+        } finally {
+            backwardSearch.release();
+            forwardSearch.release();
+        }
+    }
+
+    // The shortest route followed by up to count alternatives, all from the same two trees: the
+    // forward tree is grown until it settles the destination, which gives both the shortest route
+    // and the stretch bound, then on to that bound. fromStart may be a complete forward tree from
+    // start (e.g. a cached one) to use instead, or null. Empty if the destination is unreachable.
+    public List<KShortestPaths.Path> findWithShortest(int start, int destination, int count,
+                                                      ShortestPathTree fromStart) {
+        List<KShortestPaths.Path> result = new ArrayList<>();
+        SearchWorkspace forwardSearch = SearchWorkspace.acquire(graph.nodeCount());
+        SearchWorkspace backwardSearch = SearchWorkspace.acquire(graph.nodeCount());
+        try {
+            // A tree that was already built costs this query no settled nodes
+            int settled = 0;
+            if (fromStart == null) {
+                fromStart = ShortestPathTree.forward(graph, start, destination, maxStretch, forwardSearch);
+                settled = fromStart.getSettledNodes();
+            }
+            if (!fromStart.isReachable(destination)) {
+                return result;
+            }
+
+            int[] shortest = fromStart.path(destination);
+            double distance = fromStart.distance(destination);
+            if (count <= 0 || start == destination) {
+                result.add(new KShortestPaths.Path(shortest, distance, settled));
+                return result;
+            }
+
+            double limit = distance * maxStretch;
+            ShortestPathTree toDestination = ShortestPathTree.backward(graph, destination, limit, backwardSearch);
+            settled += toDestination.getSettledNodes();
+            result.add(new KShortestPaths.Path(shortest, distance, settled));
+            addAlternatives(result, fromStart, toDestination, limit, count,
+                    Collections.singletonList(shortest), settled);
+            return result;
+        } finally {
+            backwardSearch.release();
+            forwardSearch.release();
+        }
+    }
+
+    // Append up to count plateau routes within limit that differ enough from the existing
+    // routes and from each other
+    private void addAlternatives(List<KShortestPaths.Path> result, ShortestPathTree fromStart,
+                                 ShortestPathTree toDestination, double limit, int count,
+                                 List<int[]> existing, int settled) {
+        List<Plateau> plateaus = findPlateaus(fromStart, toDestination, limit);
+        Collections.sort(plateaus, (a, b) -> {
+            int byLength = Double.compare(b.length, a.length);
+            return byLength != 0 ? byLength : Double.compare(a.routeDistance, b.routeDistance);
+        });
+
+        // Edges of each route chosen so far, keyed by (from, to)
+        List<int[]> chosen = new ArrayList<>();
+        List<Set<Long>> chosenEdges = new ArrayList<>();
+        for (int[] path : existing) {
+            chosen.add(path);
+            chosenEdges.add(edges(path));
+        }
+
+        int added = 0;
+        for (Plateau plateau : plateaus) {
+            if (added >= count) {
+                break;
+            }
+
+            int[] path = assemble(fromStart, toDestination, plateau);
+            if (path == null || contains(chosen, path)
+                    || overlapsAny(path, chosenEdges, maxOverlap * plateau.routeDistance)) {
+                continue;
+            }
+
+            chosen.add(path);
+            chosenEdges.add(edges(path));
+            result.add(new KShortestPaths.Path(path, plateau.routeDistance, settled));
+            added++;
+        }
+    }
+
+    // A chain of edges shared by both trees, ending at last
+    private static class Plateau {
+        final int last;
+        final double length;
+        final double routeDistance;
+
+        Plateau(int last, double length, double routeDistance) {
+            this.last = last;
+            this.length = length;
+            this.routeDistance = routeDistance;
+        }
+    }
+
+    // Only nodes settled by the forward tree can be on a plateau, so just those are visited
+    private List<Plateau> findPlateaus(ShortestPathTree fromStart, ShortestPathTree toDestination, double limit) {
+        List<Plateau> plateaus = new ArrayList<>();
+
+        for (int i = 0; i < fromStart.getSettledNodes(); i++) {
+            int node = fromStart.settledNode(i);
+            if (!toDestination.isReachable(node)) {
+                continue;
+            }
+            double routeDistance = fromStart.distance(node) + toDestination.distance(node);
+            if (routeDistance > limit) {
+                continue;
+            }
+
+            // A plateau starts where the edge into the node is not shared but the edge out is
+            int before = fromStart.parent(node);
+            if (before != CampusGraph.NO_NODE && toDestination.parent(before) == node) {
+                continue;
+            }
+            int last = node;
+            int next = toDestination.parent(last);
+            while (next != CampusGraph.NO_NODE && fromStart.parent(next) == last) {
+                last = next;
+                next = toDestination.parent(last);
+            }
+            if (last == node) {
+                continue;
+            }
+
+            double length = fromStart.distance(last) - fromStart.distance(node);
+            plateaus.add(new Plateau(last, length, routeDistance));
+        }
+
+        return plateaus;
+    }
+
+    // Forward tree path to the plateau's last node (it runs along the whole plateau), then the
+    // backward tree path on to the destination; null if the two parts cross
+    private int[] assemble(ShortestPathTree fromStart, ShortestPathTree toDestination, Plateau plateau) {
+        int[] head = fromStart.path(plateau.last);
+        int[] tail = toDestination.path(plateau.last);
+
+        int[] path = new int[head.length + tail.length - 1];
+        System.arraycopy(head, 0, path, 0, head.length);
+        System.arraycopy(tail, 1, path, head.length, tail.length - 1);
+
+        Set<Integer> seen = new HashSet<>();
+        for (int node : path) {
+            if (!seen.add(node)) {
+                return null;
+            }
+        }
+        return path;
+    }
+
+    private static boolean contains(List<int[]> paths, int[] path) {
+        for (int[] other : paths) {
+            if (Arrays.equals(other, path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long edgeKey(int from, int to) {
+        return ((long) from << 32) | (to & 0xffffffffL);
+    }
+
+    private static Set<Long> edges(int[] path) {
+        Set<Long> edges = new HashSet<>();
+        for (int i = 0; i + 1 < path.length; i++) {
+            edges.add(edgeKey(path[i], path[i + 1]));
+        }
+        return edges;
+    }
+
+    // True if the path shares more than maxShared of its length with any one of the routes
+    private boolean overlapsAny(int[] path, List<Set<Long>> routes, double maxShared) {
+        for (Set<Long> edges : routes) {
+            if (sharedLength(path, edges) > maxShared) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private double sharedLength(int[] path, Set<Long> edges) {
+        double shared = 0;
+        for (int i = 0; i + 1 < path.length; i++) {
+            if (edges.contains(edgeKey(path[i], path[i + 1]))) {
+                shared += graph.edgeWeight(graph.findEdge(path[i], path[i + 1]));
+            }
+        }
+        return shared;
+    }
+}
@@ -0,0 +1,230 @@
+package dcit204.map;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+// Shortest routes for large batches of (start, destination) queries, e.g. nightly movement
+// analysis over a whole timetable.
+// Queries are read in chunks and grouped by start: a start with several destinations gets a
+// single one-to-many search that stops once all of them are settled, while a lone query uses
+// RouteFinder's single-pair search. Groups run in parallel on the given executor, which can
+// be a ForkJoinPool or any other Executor (for instance a virtual-thread executor on newer
+// runtimes). Results are streamed to a consumer either in input order or as they finish;
+// the consumer is never called by two threads at once.
+//
+// Only the shortest route of each query is produced; alternatives are left to findRoutes.
+public class BatchRouteRunner {
+    public static final int DEFAULT_CHUNK_SIZE = 4096;
+
+    // Order in which results reach the consumer
+    public enum Order {
+        INPUT,
+        COMPLETION
+    }
+
+    private final RouteFinder routeFinder;
+    private final Executor executor;
+    private final SearchMode mode;
+    private final int chunkSize;
+
+    public BatchRouteRunner(RouteFinder routeFinder) {
+        this(routeFinder, ForkJoinPool.commonPool(), SearchMode.A_STAR, DEFAULT_CHUNK_SIZE);
+    }
+
+    // mode is used for lone queries; chunkSize bounds how many queries are held at once
+    public BatchRouteRunner(RouteFinder routeFinder, Executor executor, SearchMode mode, int chunkSize) {
+        this.routeFinder = routeFinder;
+        this.executor = executor;
+        this.mode = mode;
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    // One query of a batch
+    public static final class Query {
+        private final String start;
+        private final String destination;
+
+        public Query(String start, String destination) {
+            this.start = start;
+            this.destination = destination;
+        }
+
+        public String getStart() {
+            return start;
+        }
+
+        public String getDestination() {
+            return destination;
+        }
+    }
+
+    // Answer to one query; the route is null if either place is unknown or there is no path
+    public static final class Result {
+        private final long index;
+        private final Query query;
+        private final RouteOption route;
+
+        Result(long index, Query query, RouteOption route) {
+            this.index = index;
+            this.query = query;
+            this.route = route;
+        }
+
+        // Position of the query in the input
+        public long getIndex() {
+            return index;
+        }
+
+        public Query getQuery() {
+            return query;
+        }
+
+        public RouteOption getRoute() {
+            return route;
+        }
+    }
+
+    // Answer every query and pass the results to consumer; returns the number of queries
+    public long run(Stream<Query> queries, CampusGraph graph, Order order, Consumer<Result> consumer) {
+        Iterator<Query> input = queries.iterator();
+        Emitter emitter = new Emitter(order, consumer);
+        long offset = 0;
+
+        while (input.hasNext()) {
+            List<Query> chunk = new ArrayList<>(chunkSize);
+            while (chunk.size() < chunkSize && input.hasNext()) {
+                chunk.add(input.next());
+            }
+            runChunk(chunk, offset, graph, emitter);
+            offset += chunk.size();
+        }
+        return offset;
+    }
+
+    // Collect all results in input order
+    public List<RouteOption> run(List<Query> queries, CampusGraph graph) {
+        List<RouteOption> routes = new ArrayList<>(queries.size());
+        run(queries.stream(), graph, Order.INPUT, result -> routes.add(result.getRoute()));
+        return routes;
+    }
+
+    private void runChunk(List<Query> chunk, long offset, CampusGraph graph, Emitter emitter) {
+        // Query positions within the chunk, grouped by start node
+        Map<Integer, List<Integer>> groups = new LinkedHashMap<>();
+        List<Integer> unknown = new ArrayList<>();
+        for (int i = 0; i < chunk.size(); i++) {
+            int start = graph.idOf(chunk.get(i).getStart());
+            if (start == CampusGraph.NO_NODE) {
+                unknown.add(i);
+            } else {
+                groups.computeIfAbsent(start, key -> new ArrayList<>()).add(i);
+            }
+        }
+
+        emitter.beginChunk(offset, chunk.size());
+        if (!unknown.isEmpty()) {
+            emitter.emit(resultsFor(chunk, offset, unknown, new RouteOption[unknown.size()]));
+        }
+
+        List<CompletableFuture<Void>> tasks = new ArrayList<>();
+        for (Map.Entry<Integer, List<Integer>> group : groups.entrySet()) {
+            int start = group.getKey();
+            List<Integer> members = group.getValue();
+            tasks.add(CompletableFuture.runAsync(
+                    () -> emitter.emit(resultsFor(chunk, offset, members, routeGroup(graph, start, chunk, members))),
+                    executor));
+        }
+
+        try {
+            CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            throw new IllegalStateException("Batch route query failed", e.getCause());
+        }
+    }
+
+    // Routes from one start to each member's destination
+    private RouteOption[] routeGroup(CampusGraph graph, int start, List<Query> chunk, List<Integer> members) {
+        int[] targets = new int[members.size()];
+        for (int i = 0; i < targets.length; i++) {
+            targets[i] = graph.idOf(chunk.get(members.get(i)).getDestination());
+        }
+
+        RouteOption[] routes = new RouteOption[targets.length];
+        if (targets.length == 1) {
+            if (targets[0] != CampusGraph.NO_NODE) {
+                routes[0] = routeFinder.findShortestRoute(graph, start, targets[0], mode);
+            }
+            return routes;
+        }
+
+        SearchWorkspace search = SearchWorkspace.acquire(graph.nodeCount());
+        try {
+            int settled = DistanceCalculator.searchToAll(graph, start, targets, search);
+            for (int i = 0; i < targets.length; i++) {
+                int target = targets[i];
+                if (target == CampusGraph.NO_NODE || !search.isSettled(target)) {
+                    continue;
+                }
+                List<String> path = new ArrayList<>();
+                for (int node = target; node != CampusGraph.NO_NODE; node = search.parent(node)) {
+                    path.add(graph.nameOf(node));
+                }
+                Collections.reverse(path);
+                routes[i] = routeFinder.createRoute(graph, path, search.distance(target), settled);
+            }
+        } finally {
+            search.release();
+        }
+        return routes;
+    }
+
+    private static List<Result> resultsFor(List<Query> chunk, long offset, List<Integer> members, RouteOption[] routes) {
+        List<Result> results = new ArrayList<>(members.size());
+        for (int i = 0; i < routes.length; i++) {
+            int position = members.get(i);
+            results.add(new Result(offset + position, chunk.get(position), routes[i]));
+        }
+        return results;
+    }
+
+    // Hands results to the consumer one thread at a time, holding back out-of-order ones if needed
+    private static final class Emitter {
+        private final Order order;
+        private final Consumer<Result> consumer;
+        private Result[] pending;
+        private long chunkOffset;
+        private int next;
+
+        Emitter(Order order, Consumer<Result> consumer) {
+            this.order = order;
+            this.consumer = consumer;
+        }
+
+        synchronized void beginChunk(long offset, int size) {
+            chunkOffset = offset;
+            next = 0;
+            if (order == Order.INPUT) {
+                pending = new Result[size];
+            }
+        }
+
+        synchronized void emit(List<Result> results) {
+            if (order == Order.COMPLETION) {
+                for (Result result : results) {
+                    consumer.accept(result);
+                }
+                return;
+            }
+
+            for (Result result : results) {
+                pending[(int) (result.getIndex() - chunkOffset)] = result;
+            }
+            while (next < pending.length && pending[next] != null) {
+                consumer.accept(pending[next]);
+                pending[next++] = null;
+            }
+        }
+    }
+}
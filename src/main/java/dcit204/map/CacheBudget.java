@@ -0,0 +1,85 @@
+package dcit204.map;
+
+import java.util.*;
+
+// Memory budget shared by several routing caches.
+// Every cached entry is charged an approximate size in bytes, and all charges sit in one
+// least-recently-used order across the caches: when the total goes over the budget the
+// globally coldest entries are evicted, whichever cache they belong to. A burst of route
+// queries can therefore push out cold shortest-path trees and vice versa.
+//
+// Caches sharing a budget also share its lock (they synchronize on the budget object), so
+// an eviction that reaches into another cache can never deadlock.
+public class CacheBudget {
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    private final long maxBytes;
+    private long usedBytes;
+    private final LinkedHashMap<Charge, Boolean> charges = new LinkedHashMap<>(16, 0.75f, true);
+
+    public CacheBudget(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    // Implemented by caches so the budget can take entries away from them
+    interface Owner {
+        // Remove the entry for key; called with the budget's lock held
+        void evicted(Object key);
+    }
+
+    // One entry's share of the budget
+    static final class Charge {
+        final Owner owner;
+        final Object key;
+        final long bytes;
+
+        Charge(Owner owner, Object key, long bytes) {
+            this.owner = owner;
+            this.key = key;
+            this.bytes = bytes;
+        }
+    }
+
+    // Account for a new entry, evicting the coldest other entries until everything fits
+    synchronized Charge charge(Owner owner, Object key, long bytes) {
+        Charge charge = new Charge(owner, key, bytes);
+        charges.put(charge, Boolean.TRUE);
+        usedBytes += bytes;
+
+        Iterator<Charge> eldest = charges.keySet().iterator();
+        while (usedBytes > maxBytes && eldest.hasNext()) {
+            Charge victim = eldest.next();
+            if (victim == charge) {
+                continue;  // Never evict the entry being added
+            }
+            eldest.remove();
+            usedBytes -= victim.bytes;
+            victim.owner.evicted(victim.key);
+        }
+        return charge;
+    }
+
+    // Mark an entry as recently used
+    synchronized void touch(Charge charge) {
+        charges.get(charge);
+    }
+
+    // Give back an entry's share when its cache drops it
+    synchronized void release(Charge charge) {
+        if (charges.remove(charge) != null) {
+            usedBytes -= charge.bytes;
+        }
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized int entryCount() {
+        return charges.size();
+    }
+}
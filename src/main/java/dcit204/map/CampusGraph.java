@@ -0,0 +1,512 @@
+package dcit204.map;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Immutable campus graph stored in compressed sparse row (CSR) form.
+// Every location is interned to a dense int id; the outgoing edges of node u are
+// targets[offsets[u] .. offsets[u + 1]) with the matching weights in the same slots.
+// A reverse CSR of incoming edges is derived on construction for backward searches.
+public class CampusGraph {
+    public static final int NO_NODE = -1;
+
+    public static final byte FLAG_LOCATION = 1;
+    public static final byte FLAG_LANDMARK = 2;
+
+    // Every built graph gets a fresh, process-wide unique version number
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
+    private final long version;
+
+    // Built for a single call from a legacy nested map rather than loaded and shared. Its
+    // version is never seen again, so caches keyed by version pass such a graph by.
+    private final boolean detached;
+    private final String[] names;
+    private final Map<String, Integer> ids;
+    private final byte[] flags;
+    private final int[] landmarkIds;
+
+    private final int[] offsets;
+    private final int[] targets;
+    private final double[] weights;
+
+    // Incoming edges of node v: sources[reverseOffsets[v] .. reverseOffsets[v + 1]),
+    // with reverseEdges holding the matching forward edge index
+    private final int[] reverseOffsets;
+    private final int[] reverseSources;
+    private final int[] reverseEdges;
+
+    // Node coordinates in degrees, NaN where a node has no known position
+    private final double[] latitudes;
+    private final double[] longitudes;
+
+    // Built on first use; safe to share because the graph never changes
+    private volatile SpatialIndex spatialIndex;
+    private volatile StraightLineBound straightLineBound;
+
+    private CampusGraph(String[] names, Map<String, Integer> ids, byte[] flags, int[] landmarkIds,
+                        int[] offsets, int[] targets, double[] weights,
+                        double[] latitudes, double[] longitudes, boolean detached) {
+        this.version = VERSIONS.incrementAndGet();
+        this.detached = detached;
+        this.names = names;
+        this.ids = ids;
+        this.flags = flags;
+        this.landmarkIds = landmarkIds;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+
+        // Counting sort of the forward edges by target
+        int n = names.length;
+        this.reverseOffsets = new int[n + 1];
+        for (int target : targets) {
+            reverseOffsets[target + 1]++;
+        }
+        for (int node = 0; node < n; node++) {
+            reverseOffsets[node + 1] += reverseOffsets[node];
+        }
+
+        this.reverseSources = new int[targets.length];
+        this.reverseEdges = new int[targets.length];
+        int[] next = Arrays.copyOf(reverseOffsets, n);
+        for (int node = 0; node < n; node++) {
+            for (int e = offsets[node]; e < offsets[node + 1]; e++) {
+                int slot = next[targets[e]]++;
+                reverseSources[slot] = node;
+                reverseEdges[slot] = e;
+            }
+        }
+    }
+
+    // Wrap already-compacted arrays, e.g. ones read back from a binary snapshot
+    static CampusGraph fromArrays(String[] names, byte[] flags, int[] landmarkIds,
+                                  int[] offsets, int[] targets, double[] weights,
+                                  double[] latitudes, double[] longitudes) {
+        Map<String, Integer> ids = new HashMap<>(names.length * 2);
+        for (int node = 0; node < names.length; node++) {
+            ids.put(names[node], node);
+        }
+        return new CampusGraph(names, ids, flags, landmarkIds, offsets, targets, weights,
+                latitudes, longitudes, false);
+    }
+
+    // Build a graph from the legacy nested map representation
+    public static CampusGraph fromMap(Map<String, Map<String, Double>> graph) {
+        Builder builder = new Builder();
+        builder.detached = true;
+
+        for (Map.Entry<String, Map<String, Double>> entry : graph.entrySet()) {
+            builder.addLocation(entry.getKey());
+        }
+
+        for (Map.Entry<String, Map<String, Double>> entry : graph.entrySet()) {
+            for (Map.Entry<String, Double> neighbor : entry.getValue().entrySet()) {
+                builder.addEdge(entry.getKey(), neighbor.getKey(), neighbor.getValue());
+            }
+        }
+
+        return builder.build();
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public boolean isDetached() {
+        return detached;
+    }
+
+    public int nodeCount() {
+        return names.length;
+    }
+
+    public int edgeCount() {
+        return targets.length;
+    }
+
+    // Look up the id of a location, or NO_NODE if it is not part of the graph
+    public int idOf(String name) {
+        if (name == null) {
+            return NO_NODE;
+        }
+        Integer id = ids.get(name);
+        return id == null ? NO_NODE : id;
+    }
+
+    public String nameOf(int node) {
+        return names[node];
+    }
+
+    public boolean contains(String name) {
+        return idOf(name) != NO_NODE;
+    }
+
+    public boolean isLocation(int node) {
+        return (flags[node] & FLAG_LOCATION) != 0;
+    }
+
+    public boolean isLandmark(int node) {
+        return (flags[node] & FLAG_LANDMARK) != 0;
+    }
+
+    public byte flagsOf(int node) {
+        return flags[node];
+    }
+
+    // First edge slot of node u; the edges of u end at firstEdge(u + 1)
+    public int firstEdge(int node) {
+        return offsets[node];
+    }
+
+    public int edgeTarget(int edge) {
+        return targets[edge];
+    }
+
+    public double edgeWeight(int edge) {
+        return weights[edge];
+    }
+
+    // First incoming-edge slot of node v; the incoming edges of v end at firstReverseEdge(v + 1)
+    public int firstReverseEdge(int node) {
+        return reverseOffsets[node];
+    }
+
+    public int reverseEdgeSource(int reverseEdge) {
+        return reverseSources[reverseEdge];
+    }
+
+    public double reverseEdgeWeight(int reverseEdge) {
+        return weights[reverseEdges[reverseEdge]];
+    }
+
+    // Forward edge index of an incoming-edge slot
+    public int reverseEdgeForward(int reverseEdge) {
+        return reverseEdges[reverseEdge];
+    }
+
+    // Find the edge from -> to, or -1 if the two nodes are not directly connected
+    public int findEdge(int from, int to) {
+        for (int e = offsets[from]; e < offsets[from + 1]; e++) {
+            if (targets[e] == to) {
+                return e;
+            }
+        }
+        return -1;
+    }
+
+    public boolean hasCoordinates(int node) {
+        return !Double.isNaN(latitudes[node]);
+    }
+
+    public double latitude(int node) {
+        return latitudes[node];
+    }
+
+    public double longitude(int node) {
+        return longitudes[node];
+    }
+
+    // Nearest-node index over all nodes with coordinates
+    public SpatialIndex getSpatialIndex() {
+        SpatialIndex index = spatialIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = spatialIndex;
+                if (index == null) {
+                    index = new SpatialIndex(this);
+                    spatialIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    // Straight-line lower bounds on distances for A*, including nodes without coordinates
+    public StraightLineBound getStraightLineBound() {
+        StraightLineBound bound = straightLineBound;
+        if (bound == null) {
+            synchronized (this) {
+                bound = straightLineBound;
+                if (bound == null) {
+                    bound = new StraightLineBound(this);
+                    straightLineBound = bound;
+                }
+            }
+        }
+        return bound;
+    }
+
+    // Largest factor s such that s * straight-line distance never exceeds an edge weight, or a
+    // detour through nodes without coordinates; 0 if no bound can be given (see StraightLineBound)
+    public double getHeuristicScale() {
+        return getStraightLineBound().getScale();
+    }
+
+    // Names of all nodes flagged as locations, in id order
+    public List<String> getLocationNames() {
+        List<String> result = new ArrayList<>();
+        for (int node = 0; node < names.length; node++) {
+            if (isLocation(node)) {
+                result.add(names[node]);
+            }
+        }
+        return result;
+    }
+
+    // Names of all landmarks, in the order they were declared
+    public List<String> getLandmarkNames() {
+        List<String> result = new ArrayList<>(landmarkIds.length);
+        for (int id : landmarkIds) {
+            result.add(names[id]);
+        }
+        return result;
+    }
+
+    public List<String> getNodeNames() {
+        return Collections.unmodifiableList(Arrays.asList(names));
+    }
+
+    // Raw arrays, shared with the snapshot writer; callers must not modify them
+    int[] landmarkIdArray() {
+        return landmarkIds;
+    }
+
+    int[] offsetArray() {
+        return offsets;
+    }
+
+    int[] targetArray() {
+        return targets;
+    }
+
+    double[] weightArray() {
+        return weights;
+    }
+
+    double[] latitudeArray() {
+        return latitudes;
+    }
+
+    double[] longitudeArray() {
+        return longitudes;
+    }
+
+    // Expand the graph back into the legacy nested map representation
+    public Map<String, Map<String, Double>> toMap() {
+        Map<String, Map<String, Double>> graph = new LinkedHashMap<>();
+
+        for (int node = 0; node < names.length; node++) {
+            Map<String, Double> neighbors = new LinkedHashMap<>();
+            for (int e = offsets[node]; e < offsets[node + 1]; e++) {
+                neighbors.put(names[targets[e]], weights[e]);
+            }
+            graph.put(names[node], neighbors);
+        }
+
+        return graph;
+    }
+
+    // Mutable builder that collects nodes and edges into primitive arrays before compacting them
+    public static class Builder {
+        private final List<String> names = new ArrayList<>();
+        private final Map<String, Integer> ids = new HashMap<>();
+        private byte[] flags = new byte[16];
+        private double[] latitudes = newCoordinateArray(16);
+        private double[] longitudes = newCoordinateArray(16);
+        private final List<Integer> landmarkIds = new ArrayList<>();
+        private final CampusGraph base;
+        private boolean detached;
+
+        private int[] edgeFrom = new int[64];
+        private int[] edgeTo = new int[64];
+        private double[] edgeWeight = new double[64];
+        private int edgeCount;
+
+        public Builder() {
+            this.base = null;
+        }
+
+        // Start from an existing graph so that new nodes keep their ids stable
+        public Builder(CampusGraph graph) {
+            this.base = graph;
+            for (int node = 0; node < graph.nodeCount(); node++) {
+                addNode(graph.nameOf(node));
+                flags[node] = graph.flagsOf(node);
+                latitudes[node] = graph.latitude(node);
+                longitudes[node] = graph.longitude(node);
+            }
+            for (int id : graph.landmarkIds) {
+                landmarkIds.add(id);
+            }
+            for (int node = 0; node < graph.nodeCount(); node++) {
+                for (int e = graph.firstEdge(node); e < graph.firstEdge(node + 1); e++) {
+                    addEdge(node, graph.edgeTarget(e), graph.edgeWeight(e));
+                }
+            }
+        }
+
+        // Intern a node name, returning its id
+        public int addNode(String name) {
+            Integer existing = ids.get(name);
+            if (existing != null) {
+                return existing;
+            }
+
+            int id = names.size();
+            names.add(name);
+            ids.put(name, id);
+
+            if (id == flags.length) {
+                int capacity = flags.length * 2;
+                flags = Arrays.copyOf(flags, capacity);
+                latitudes = Arrays.copyOf(latitudes, capacity);
+                longitudes = Arrays.copyOf(longitudes, capacity);
+                Arrays.fill(latitudes, id, capacity, Double.NaN);
+                Arrays.fill(longitudes, id, capacity, Double.NaN);
+            }
+            return id;
+        }
+
+        private static double[] newCoordinateArray(int capacity) {
+            double[] values = new double[capacity];
+            Arrays.fill(values, Double.NaN);
+            return values;
+        }
+
+        // The graph this builder was copied from, or null for a fresh builder
+        public CampusGraph getBase() {
+            return base;
+        }
+
+        public int setCoordinates(String name, double latitude, double longitude) {
+            int id = addNode(name);
+            latitudes[id] = latitude;
+            longitudes[id] = longitude;
+            return id;
+        }
+
+        public int addLocation(String name) {
+            int id = addNode(name);
+            flags[id] |= FLAG_LOCATION;
+            return id;
+        }
+
+        public int addLandmark(String name) {
+            int id = addNode(name);
+            if ((flags[id] & FLAG_LANDMARK) == 0) {
+                flags[id] |= FLAG_LANDMARK;
+                landmarkIds.add(id);
+            }
+            return id;
+        }
+
+        public boolean contains(String name) {
+            return ids.containsKey(name);
+        }
+
+        public boolean isLandmark(String name) {
+            Integer id = ids.get(name);
+            return id != null && (flags[id] & FLAG_LANDMARK) != 0;
+        }
+
+        // Names of all nodes flagged as locations so far, in id order
+        public List<String> getLocationNames() {
+            List<String> result = new ArrayList<>();
+            for (int node = 0; node < names.size(); node++) {
+                if ((flags[node] & FLAG_LOCATION) != 0) {
+                    result.add(names.get(node));
+                }
+            }
+            return result;
+        }
+
+        public int nodeCount() {
+            return names.size();
+        }
+
+        // Add a directed edge; adding the same edge again replaces its weight
+        public void addEdge(String from, String to, double weight) {
+            addEdge(addNode(from), addNode(to), weight);
+        }
+
+        public void addEdge(int from, int to, double weight) {
+            if (edgeCount == edgeFrom.length) {
+                int capacity = edgeFrom.length * 2;
+                edgeFrom = Arrays.copyOf(edgeFrom, capacity);
+                edgeTo = Arrays.copyOf(edgeTo, capacity);
+                edgeWeight = Arrays.copyOf(edgeWeight, capacity);
+            }
+            edgeFrom[edgeCount] = from;
+            edgeTo[edgeCount] = to;
+            edgeWeight[edgeCount] = weight;
+            edgeCount++;
+        }
+
+        public CampusGraph build() {
+            int n = names.size();
+
+            // Counting sort of the edges by source node (stable, so later duplicates stay later)
+            int[] offsets = new int[n + 1];
+            for (int i = 0; i < edgeCount; i++) {
+                offsets[edgeFrom[i] + 1]++;
+            }
+            for (int node = 0; node < n; node++) {
+                offsets[node + 1] += offsets[node];
+            }
+
+            int[] next = Arrays.copyOf(offsets, n);
+            int[] sortedTo = new int[edgeCount];
+            double[] sortedWeight = new double[edgeCount];
+            for (int i = 0; i < edgeCount; i++) {
+                int slot = next[edgeFrom[i]]++;
+                sortedTo[slot] = edgeTo[i];
+                sortedWeight[slot] = edgeWeight[i];
+            }
+
+            // Drop duplicate edges, keeping the most recently added weight
+            int[] lastSlot = new int[n];
+            Arrays.fill(lastSlot, -1);
+            int[] targets = new int[edgeCount];
+            double[] weights = new double[edgeCount];
+            int[] compactOffsets = new int[n + 1];
+            int size = 0;
+
+            for (int node = 0; node < n; node++) {
+                int begin = size;
+                for (int e = offsets[node]; e < offsets[node + 1]; e++) {
+                    int target = sortedTo[e];
+                    if (lastSlot[target] >= begin) {
+                        weights[lastSlot[target]] = sortedWeight[e];
+                    } else {
+                        lastSlot[target] = size;
+                        targets[size] = target;
+                        weights[size] = sortedWeight[e];
+                        size++;
+                    }
+                }
+                compactOffsets[node + 1] = size;
+            }
+
+            int[] landmarks = new int[landmarkIds.size()];
+            for (int i = 0; i < landmarks.length; i++) {
+                landmarks[i] = landmarkIds.get(i);
+            }
+
+            return new CampusGraph(
+                    names.toArray(new String[0]),
+                    new HashMap<>(ids),
+                    Arrays.copyOf(flags, n),
+                    landmarks,
+                    compactOffsets,
+                    Arrays.copyOf(targets, size),
+                    Arrays.copyOf(weights, size),
+                    Arrays.copyOf(latitudes, n),
+                    Arrays.copyOf(longitudes, n),
+                    detached
+            );
+        }
+    }
+}
@@ -0,0 +1,875 @@
+package dcit204.map;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+// Contraction Hierarchies over a CampusGraph.
+// Preprocessing contracts nodes from least to most important, adding a shortcut u -> w
+// whenever contracting v would otherwise lose the shortest path u -> v -> w. Contraction
+// runs in rounds: each round picks an independent set of nodes whose priority is lower
+// than all of their neighbours', computes their shortcuts in parallel, then applies them.
+// A witness search for the i-th node of a round treats the round's earlier nodes as already
+// contracted, so the result is never missing a shortcut the sequential order would need.
+//
+// Queries run a bidirectional Dijkstra that only follows edges towards higher-ranked
+// nodes, and shortcuts are unpacked back into original edges for the final path.
+public class ContractionHierarchy {
+    private static final int FILE_MAGIC = 0x55474348;  // "UGCH"
+    private static final int FILE_VERSION = 1;
+
+    // Settled-node budgets for a single witness search. Cutting a search short only adds
+    // shortcuts, so priority estimates use a much smaller budget than the real contraction.
+    private static final int WITNESS_SETTLE_LIMIT = 500;
+    private static final int ESTIMATE_SETTLE_LIMIT = 50;
+
+    private final long graphVersion;
+    private final long graphHash;
+    private final int[] ranks;
+
+    // Upward edges: upOut holds v -> w with rank[w] > rank[v], stored at v;
+    // upIn holds u -> v with rank[u] > rank[v], stored at v. Middle is -1 for original edges.
+    private final int[] outOffsets;
+    private final int[] outTargets;
+    private final double[] outWeights;
+    private final int[] outMiddles;
+    private final int[] inOffsets;
+    private final int[] inSources;
+    private final double[] inWeights;
+    private final int[] inMiddles;
+
+    private ContractionHierarchy(long graphVersion, long graphHash, int[] ranks,
+                                 int[] outOffsets, int[] outTargets, double[] outWeights, int[] outMiddles,
+                                 int[] inOffsets, int[] inSources, double[] inWeights, int[] inMiddles) {
+        this.graphVersion = graphVersion;
+        this.graphHash = graphHash;
+        this.ranks = ranks;
+        this.outOffsets = outOffsets;
+        this.outTargets = outTargets;
+        this.outWeights = outWeights;
+        this.outMiddles = outMiddles;
+        this.inOffsets = inOffsets;
+        this.inSources = inSources;
+        this.inWeights = inWeights;
+        this.inMiddles = inMiddles;
+    }
+
+    public long getGraphVersion() {
+        return graphVersion;
+    }
+
+    public int getRank(int node) {
+        return ranks[node];
+    }
+
+    // Number of stored upward edges, original and shortcut
+    public int edgeCount() {
+        return outTargets.length + inSources.length;
+    }
+
+    // Preprocess a graph; witness searches and priority updates use the common fork-join pool
+    public static ContractionHierarchy build(CampusGraph graph) {
+        return new Contractor(graph).run();
+    }
+
+    // Result of a hierarchy query: the unpacked node path and its length
+    public static class Result {
+        private final int[] nodes;
+        private final double distance;
+        private final int settledNodes;
+
+        Result(int[] nodes, double distance, int settledNodes) {
+            this.nodes = nodes;
+            this.distance = distance;
+            this.settledNodes = settledNodes;
+        }
+
+        public int[] getNodes() {
+            return nodes;
+        }
+
+        public double getDistance() {
+            return distance;
+        }
+
+        public int getSettledNodes() {
+            return settledNodes;
+        }
+    }
+
+    // Shortest path from start to destination, or null if there is none.
+    // Both directions run on pooled SearchWorkspaces, whose parent slots hold the edge each
+    // node was reached by, so a query costs only what it settles.
+    public Result query(int start, int destination) {
+        if (start == destination) {
+            return new Result(new int[]{start}, 0, 1);
+        }
+
+        SearchWorkspace forwardSearch = SearchWorkspace.acquire(ranks.length);
+        SearchWorkspace backwardSearch = SearchWorkspace.acquire(ranks.length);
+        try {
+            return query(start, destination, forwardSearch, backwardSearch);
+        } finally {
+            backwardSearch.release();
+            forwardSearch.release();
+        }
+    }
+
+    private Result query(int start, int destination, SearchWorkspace forwardSearch, SearchWorkspace backwardSearch) {
+        IndexedMinHeap forwardQueue = forwardSearch.heap();
+        IndexedMinHeap backwardQueue = backwardSearch.heap();
+        forwardSearch.reach(start, 0, -1);
+        forwardQueue.insert(start, 0);
+        backwardSearch.reach(destination, 0, -1);
+        backwardQueue.insert(destination, 0);
+
+        double best = Double.MAX_VALUE;
+        int meeting = CampusGraph.NO_NODE;
+        int settled = 0;
+        boolean forward = true;
+
+        while (true) {
+            // A direction is finished once its smallest key can no longer beat the best meeting
+            boolean forwardOpen = !forwardQueue.isEmpty() && forwardQueue.minKey() < best;
+            boolean backwardOpen = !backwardQueue.isEmpty() && backwardQueue.minKey() < best;
+            if (!forwardOpen && !backwardOpen) {
+                break;
+            }
+            if (!forwardOpen || !backwardOpen) {
+                forward = forwardOpen;
+            }
+
+            if (forward) {
+                int node = forwardQueue.pollMin();
+                settled++;
+                for (int e = outOffsets[node]; e < outOffsets[node + 1]; e++) {
+                    int next = outTargets[e];
+                    double distance = forwardSearch.distance(node) + outWeights[e];
+                    if (!forwardSearch.isReached(next) || distance < forwardSearch.distance(next)) {
+                        forwardSearch.reach(next, distance, e);
+                        forwardQueue.insertOrDecrease(next, distance);
+                    }
+                    if (backwardSearch.isReached(next)
+                            && forwardSearch.distance(next) + backwardSearch.distance(next) < best) {
+                        best = forwardSearch.distance(next) + backwardSearch.distance(next);
+                        meeting = next;
+                    }
+                }
+            } else {
+                int node = backwardQueue.pollMin();
+                settled++;
+                for (int e = inOffsets[node]; e < inOffsets[node + 1]; e++) {
+                    int next = inSources[e];
+                    double distance = backwardSearch.distance(node) + inWeights[e];
+                    if (!backwardSearch.isReached(next) || distance < backwardSearch.distance(next)) {
+                        backwardSearch.reach(next, distance, e);
+                        backwardQueue.insertOrDecrease(next, distance);
+                    }
+                    if (forwardSearch.isReached(next)
+                            && forwardSearch.distance(next) + backwardSearch.distance(next) < best) {
+                        best = forwardSearch.distance(next) + backwardSearch.distance(next);
+                        meeting = next;
+                    }
+                }
+            }
+            forward = !forward;
+        }
+
+        if (meeting == CampusGraph.NO_NODE) {
+            return null;
+        }
+
+        // Unpack start -> meeting from the forward tree (walked backwards, so collect then reverse)
+        IntList path = new IntList();
+        IntList reversed = new IntList();
+        for (int node = meeting; forwardSearch.parent(node) >= 0; ) {
+            int e = forwardSearch.parent(node);
+            int from = sourceOfOutEdge(e);
+            reversed.add(e);
+            node = from;
+        }
+        path.add(start);
+        for (int i = reversed.size() - 1; i >= 0; i--) {
+            int e = reversed.get(i);
+            unpack(sourceOfOutEdge(e), outTargets[e], outMiddles[e], path);
+        }
+
+        // Then meeting -> destination from the backward tree
+        for (int node = meeting; backwardSearch.parent(node) >= 0; ) {
+            int e = backwardSearch.parent(node);
+            int to = targetOfInEdge(e);
+            unpack(node, to, inMiddles[e], path);
+            node = to;
+        }
+
+        return new Result(path.toArray(), best, settled);
+    }
+
+    // Append the original nodes of edge from -> to (excluding from) to the path
+    private void unpack(int from, int to, int middle, IntList path) {
+        // Explicit stack of (from, to, middle) triples to avoid deep recursion
+        IntList stack = new IntList();
+        stack.add(from);
+        stack.add(to);
+        stack.add(middle);
+
+        while (stack.size() > 0) {
+            int mid = stack.pop();
+            int b = stack.pop();
+            int a = stack.pop();
+
+            if (mid < 0) {
+                path.add(b);
+                continue;
+            }
+
+            // a -> mid is stored as an incoming edge of mid, mid -> b as an outgoing edge of mid.
+            // Push the second half first so the first half is expanded first.
+            stack.add(mid);
+            stack.add(b);
+            stack.add(outMiddles[findOut(mid, b)]);
+            stack.add(a);
+            stack.add(mid);
+            stack.add(inMiddles[findIn(mid, a)]);
+        }
+    }
+
+    private int findOut(int node, int target) {
+        for (int e = outOffsets[node]; e < outOffsets[node + 1]; e++) {
+            if (outTargets[e] == target) {
+                return e;
+            }
+        }
+        throw new IllegalStateException("Missing hierarchy edge " + node + " -> " + target);
+    }
+
+    private int findIn(int node, int source) {
+        for (int e = inOffsets[node]; e < inOffsets[node + 1]; e++) {
+            if (inSources[e] == source) {
+                return e;
+            }
+        }
+        throw new IllegalStateException("Missing hierarchy edge " + source + " -> " + node);
+    }
+
+    private int sourceOfOutEdge(int edge) {
+        return upperBound(outOffsets, edge) - 1;
+    }
+
+    private int targetOfInEdge(int edge) {
+        return upperBound(inOffsets, edge) - 1;
+    }
+
+    // First index i with offsets[i] > value
+    private static int upperBound(int[] offsets, int value) {
+        int lo = 0;
+        int hi = offsets.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (offsets[mid] <= value) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // Save the hierarchy so it can be reused until the graph changes
+    public void write(Path file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FILE_VERSION);
+            out.writeLong(graphHash);
+            writeInts(out, ranks);
+            writeInts(out, outOffsets);
+            writeInts(out, outTargets);
+            writeDoubles(out, outWeights);
+            writeInts(out, outMiddles);
+            writeInts(out, inOffsets);
+            writeInts(out, inSources);
+            writeDoubles(out, inWeights);
+            writeInts(out, inMiddles);
+        }
+    }
+
+    // Load a saved hierarchy for this graph, or null if missing or built for different graph contents
+    public static ContractionHierarchy read(Path file, CampusGraph graph) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION
+                    || in.readLong() != hashGraph(graph)) {
+                return null;
+            }
+
+            // Every count is checked against what is left of the file before allocating
+            ArrayReader reader = new ArrayReader(in, Files.size(file) - 16);
+            int[] ranks = reader.ints();
+            int[] outOffsets = reader.ints();
+            int[] outTargets = reader.ints();
+            double[] outWeights = reader.doubles();
+            int[] outMiddles = reader.ints();
+            int[] inOffsets = reader.ints();
+            int[] inSources = reader.ints();
+            double[] inWeights = reader.doubles();
+            int[] inMiddles = reader.ints();
+
+            int n = graph.nodeCount();
+            if (ranks.length != n || !isEdgeList(outOffsets, n, outTargets.length, outWeights.length, outMiddles.length)
+                    || !isEdgeList(inOffsets, n, inSources.length, inWeights.length, inMiddles.length)) {
+                return null;
+            }
+            return new ContractionHierarchy(graph.getVersion(), hashGraph(graph), ranks,
+                    outOffsets, outTargets, outWeights, outMiddles,
+                    inOffsets, inSources, inWeights, inMiddles);
+        } catch (EOFException e) {
+            return null;  // Truncated or corrupt file, rebuild
+        }
+    }
+
+    // Content hash of the graph topology and weights, used to validate saved hierarchies
+    static long hashGraph(CampusGraph graph) {
+        long hash = graph.nodeCount();
+        for (int node = 0; node < graph.nodeCount(); node++) {
+            for (int e = graph.firstEdge(node); e < graph.firstEdge(node + 1); e++) {
+                hash = hash * 31 + node;
+                hash = hash * 31 + graph.edgeTarget(e);
+                hash = hash * 31 + Double.doubleToLongBits(graph.edgeWeight(e));
+            }
+        }
+        return hash;
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    private static void writeDoubles(DataOutputStream out, double[] values) throws IOException {
+        out.writeInt(values.length);
+        for (double value : values) {
+            out.writeDouble(value);
+        }
+    }
+
+    // True if offsets are n + 1 ascending bounds into parallel arrays of the given lengths
+    private static boolean isEdgeList(int[] offsets, int n, int targets, int weights, int middles) {
+        if (offsets.length != n + 1 || offsets[0] != 0 || offsets[n] != targets
+                || weights != targets || middles != targets) {
+            return false;
+        }
+        for (int i = 0; i < n; i++) {
+            if (offsets[i] > offsets[i + 1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Reads length-prefixed arrays, treating a length the rest of the file cannot hold as corruption
+    private static final class ArrayReader {
+        private final DataInputStream in;
+        private long remaining;
+
+        ArrayReader(DataInputStream in, long remaining) {
+            this.in = in;
+            this.remaining = remaining;
+        }
+
+        int[] ints() throws IOException {
+            int[] values = new int[count(Integer.BYTES)];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = in.readInt();
+            }
+            return values;
+        }
+
+        double[] doubles() throws IOException {
+            double[] values = new double[count(Double.BYTES)];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = in.readDouble();
+            }
+            return values;
+        }
+
+        private int count(int elementBytes) throws IOException {
+            int count = in.readInt();
+            remaining -= Integer.BYTES;
+            if (count < 0 || (long) count * elementBytes > remaining) {
+                throw new EOFException("Array of " + count + " entries does not fit in the file");
+            }
+            remaining -= (long) count * elementBytes;
+            return count;
+        }
+    }
+
+    // Growable int array
+    private static class IntList {
+        private int[] values = new int[16];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int get(int index) {
+            return values[index];
+        }
+
+        int pop() {
+            return values[--size];
+        }
+
+        int size() {
+            return size;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    // Preprocessing state: a mutable adjacency structure of the remaining (uncontracted) graph
+    private static class Contractor {
+        private final CampusGraph graph;
+        private final int n;
+
+        private final int[][] outTarget;
+        private final double[][] outWeight;
+        private final int[][] outMiddle;
+        private final int[] outSize;
+        private final int[][] inSource;
+        private final double[][] inWeight;
+        private final int[][] inMiddle;
+        private final int[] inSize;
+
+        private final boolean[] contracted;
+        private final int[] batchOrder;
+        private final int[] priority;
+        private final int[] contractedNeighbors;
+        private final int[] level;
+        private final int[] ranks;
+
+        // Upward edges recorded as each node is contracted
+        private final int[][] upOutTarget;
+        private final double[][] upOutWeight;
+        private final int[][] upOutMiddle;
+        private final int[][] upInSource;
+        private final double[][] upInWeight;
+        private final int[][] upInMiddle;
+
+        private final ThreadLocal<WitnessSearch> witnessSearches;
+
+        Contractor(CampusGraph graph) {
+            this.graph = graph;
+            this.n = graph.nodeCount();
+
+            outTarget = new int[n][];
+            outWeight = new double[n][];
+            outMiddle = new int[n][];
+            outSize = new int[n];
+            inSource = new int[n][];
+            inWeight = new double[n][];
+            inMiddle = new int[n][];
+            inSize = new int[n];
+
+            for (int node = 0; node < n; node++) {
+                int outDegree = graph.firstEdge(node + 1) - graph.firstEdge(node);
+                int inDegree = graph.firstReverseEdge(node + 1) - graph.firstReverseEdge(node);
+                outTarget[node] = new int[Math.max(4, outDegree)];
+                outWeight[node] = new double[Math.max(4, outDegree)];
+                outMiddle[node] = new int[Math.max(4, outDegree)];
+                inSource[node] = new int[Math.max(4, inDegree)];
+                inWeight[node] = new double[Math.max(4, inDegree)];
+                inMiddle[node] = new int[Math.max(4, inDegree)];
+            }
+            for (int node = 0; node < n; node++) {
+                for (int e = graph.firstEdge(node); e < graph.firstEdge(node + 1); e++) {
+                    if (graph.edgeTarget(e) != node) {
+                        addOrImprove(node, graph.edgeTarget(e), graph.edgeWeight(e), -1);
+                    }
+                }
+            }
+
+            contracted = new boolean[n];
+            batchOrder = new int[n];
+            priority = new int[n];
+            contractedNeighbors = new int[n];
+            level = new int[n];
+            ranks = new int[n];
+
+            upOutTarget = new int[n][];
+            upOutWeight = new double[n][];
+            upOutMiddle = new int[n][];
+            upInSource = new int[n][];
+            upInWeight = new double[n][];
+            upInMiddle = new int[n][];
+
+            witnessSearches = ThreadLocal.withInitial(() -> new WitnessSearch(n));
+        }
+
+        ContractionHierarchy run() {
+            IntStream.range(0, n).parallel().forEach(node -> priority[node] = computePriority(node));
+
+            int nextRank = 0;
+            int[] remaining = new int[n];
+            for (int node = 0; node < n; node++) {
+                remaining[node] = node;
+            }
+            int remainingCount = n;
+
+            while (remainingCount > 0) {
+                // Independent set: nodes that beat every remaining neighbour on (priority, id)
+                int[] batch = new int[remainingCount];
+                int batchSize = 0;
+                for (int i = 0; i < remainingCount; i++) {
+                    int node = remaining[i];
+                    if (isLocalMinimum(node)) {
+                        batch[batchSize++] = node;
+                    }
+                }
+                for (int i = 0; i < batchSize; i++) {
+                    batchOrder[batch[i]] = i + 1;
+                }
+
+                // Witness searches for the whole batch in parallel
+                Shortcuts[] shortcuts = new Shortcuts[batchSize];
+                IntStream.range(0, batchSize).parallel()
+                        .forEach(i -> shortcuts[i] = findShortcuts(batch[i], WITNESS_SETTLE_LIMIT));
+
+                // Apply sequentially: record upward edges, drop the node, insert its shortcuts
+                for (int i = 0; i < batchSize; i++) {
+                    int node = batch[i];
+                    ranks[node] = nextRank++;
+                    recordUpwardEdges(node);
+                    removeNode(node);
+                    shortcuts[i].applyTo(this);
+                    batchOrder[node] = 0;
+                }
+
+                // Re-evaluate the neighbours of everything contracted in this round
+                int[] touched = collectNeighbors(batch, batchSize);
+                IntStream.of(touched).parallel().forEach(node -> priority[node] = computePriority(node));
+
+                int kept = 0;
+                for (int i = 0; i < remainingCount; i++) {
+                    if (!contracted[remaining[i]]) {
+                        remaining[kept++] = remaining[i];
+                    }
+                }
+                remainingCount = kept;
+            }
+
+            return compact();
+        }
+
+        private boolean isLocalMinimum(int node) {
+            for (int i = 0; i < outSize[node]; i++) {
+                if (beats(outTarget[node][i], node)) {
+                    return false;
+                }
+            }
+            for (int i = 0; i < inSize[node]; i++) {
+                if (beats(inSource[node][i], node)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean beats(int a, int b) {
+            return priority[a] < priority[b] || (priority[a] == priority[b] && a < b);
+        }
+
+        private int computePriority(int node) {
+            int shortcutCount = findShortcuts(node, ESTIMATE_SETTLE_LIMIT).size;
+            int edgeDifference = shortcutCount - outSize[node] - inSize[node];
+            return 2 * edgeDifference + contractedNeighbors[node] + level[node];
+        }
+
+        // Shortcuts needed if node were contracted now
+        private Shortcuts findShortcuts(int node, int settleLimit) {
+            Shortcuts result = new Shortcuts();
+            WitnessSearch search = witnessSearches.get();
+
+            for (int i = 0; i < inSize[node]; i++) {
+                int from = inSource[node][i];
+                double inWeightValue = inWeight[node][i];
+
+                double limit = -1;
+                for (int j = 0; j < outSize[node]; j++) {
+                    if (outTarget[node][j] != from) {
+                        limit = Math.max(limit, inWeightValue + outWeight[node][j]);
+                    }
+                }
+                if (limit < 0) {
+                    continue;
+                }
+
+                search.run(this, from, node, limit, settleLimit);
+
+                for (int j = 0; j < outSize[node]; j++) {
+                    int to = outTarget[node][j];
+                    if (to == from) {
+                        continue;
+                    }
+                    double via = inWeightValue + outWeight[node][j];
+                    if (search.distanceTo(to) > via) {
+                        result.add(from, to, via, node);
+                    }
+                }
+            }
+            return result;
+        }
+
+        private void recordUpwardEdges(int node) {
+            upOutTarget[node] = Arrays.copyOf(outTarget[node], outSize[node]);
+            upOutWeight[node] = Arrays.copyOf(outWeight[node], outSize[node]);
+            upOutMiddle[node] = Arrays.copyOf(outMiddle[node], outSize[node]);
+            upInSource[node] = Arrays.copyOf(inSource[node], inSize[node]);
+            upInWeight[node] = Arrays.copyOf(inWeight[node], inSize[node]);
+            upInMiddle[node] = Arrays.copyOf(inMiddle[node], inSize[node]);
+        }
+
+        private void removeNode(int node) {
+            contracted[node] = true;
+            for (int i = 0; i < outSize[node]; i++) {
+                int to = outTarget[node][i];
+                removeIn(to, node);
+                touchNeighbor(to, node);
+            }
+            for (int i = 0; i < inSize[node]; i++) {
+                int from = inSource[node][i];
+                removeOut(from, node);
+                touchNeighbor(from, node);
+            }
+            outSize[node] = 0;
+            inSize[node] = 0;
+        }
+
+        private void touchNeighbor(int neighbor, int node) {
+            contractedNeighbors[neighbor]++;
+            level[neighbor] = Math.max(level[neighbor], level[node] + 1);
+        }
+
+        private int[] collectNeighbors(int[] batch, int batchSize) {
+            boolean[] seen = new boolean[n];
+            IntList result = new IntList();
+            for (int b = 0; b < batchSize; b++) {
+                int node = batch[b];
+                for (int[] list : new int[][]{upOutTarget[node], upInSource[node]}) {
+                    for (int neighbor : list) {
+                        if (!contracted[neighbor] && !seen[neighbor]) {
+                            seen[neighbor] = true;
+                            result.add(neighbor);
+                        }
+                    }
+                }
+            }
+            return result.toArray();
+        }
+
+        private void removeOut(int node, int target) {
+            for (int i = 0; i < outSize[node]; i++) {
+                if (outTarget[node][i] == target) {
+                    int last = --outSize[node];
+                    outTarget[node][i] = outTarget[node][last];
+                    outWeight[node][i] = outWeight[node][last];
+                    outMiddle[node][i] = outMiddle[node][last];
+                    return;
+                }
+            }
+        }
+
+        private void removeIn(int node, int source) {
+            for (int i = 0; i < inSize[node]; i++) {
+                if (inSource[node][i] == source) {
+                    int last = --inSize[node];
+                    inSource[node][i] = inSource[node][last];
+                    inWeight[node][i] = inWeight[node][last];
+                    inMiddle[node][i] = inMiddle[node][last];
+                    return;
+                }
+            }
+        }
+
+        // Insert edge from -> to, or lower the weight of an existing one
+        void addOrImprove(int from, int to, double weight, int middle) {
+            for (int i = 0; i < outSize[from]; i++) {
+                if (outTarget[from][i] == to) {
+                    if (weight < outWeight[from][i]) {
+                        outWeight[from][i] = weight;
+                        outMiddle[from][i] = middle;
+                        for (int j = 0; j < inSize[to]; j++) {
+                            if (inSource[to][j] == from) {
+                                inWeight[to][j] = weight;
+                                inMiddle[to][j] = middle;
+                                break;
+                            }
+                        }
+                    }
+                    return;
+                }
+            }
+
+            if (outSize[from] == outTarget[from].length) {
+                int capacity = outSize[from] * 2;
+                outTarget[from] = Arrays.copyOf(outTarget[from], capacity);
+                outWeight[from] = Arrays.copyOf(outWeight[from], capacity);
+                outMiddle[from] = Arrays.copyOf(outMiddle[from], capacity);
+            }
+            outTarget[from][outSize[from]] = to;
+            outWeight[from][outSize[from]] = weight;
+            outMiddle[from][outSize[from]] = middle;
+            outSize[from]++;
+
+            if (inSize[to] == inSource[to].length) {
+                int capacity = inSize[to] * 2;
+                inSource[to] = Arrays.copyOf(inSource[to], capacity);
+                inWeight[to] = Arrays.copyOf(inWeight[to], capacity);
+                inMiddle[to] = Arrays.copyOf(inMiddle[to], capacity);
+            }
+            inSource[to][inSize[to]] = from;
+            inWeight[to][inSize[to]] = weight;
+            inMiddle[to][inSize[to]] = middle;
+            inSize[to]++;
+        }
+
+        private ContractionHierarchy compact() {
+            int[] outOffsets = new int[n + 1];
+            int[] inOffsets = new int[n + 1];
+            for (int node = 0; node < n; node++) {
+                outOffsets[node + 1] = outOffsets[node] + upOutTarget[node].length;
+                inOffsets[node + 1] = inOffsets[node] + upInSource[node].length;
+            }
+
+            int[] outTargets = new int[outOffsets[n]];
+            double[] outWeights = new double[outOffsets[n]];
+            int[] outMiddles = new int[outOffsets[n]];
+            int[] inSources = new int[inOffsets[n]];
+            double[] inWeights = new double[inOffsets[n]];
+            int[] inMiddles = new int[inOffsets[n]];
+
+            for (int node = 0; node < n; node++) {
+                System.arraycopy(upOutTarget[node], 0, outTargets, outOffsets[node], upOutTarget[node].length);
+                System.arraycopy(upOutWeight[node], 0, outWeights, outOffsets[node], upOutWeight[node].length);
+                System.arraycopy(upOutMiddle[node], 0, outMiddles, outOffsets[node], upOutMiddle[node].length);
+                System.arraycopy(upInSource[node], 0, inSources, inOffsets[node], upInSource[node].length);
+                System.arraycopy(upInWeight[node], 0, inWeights, inOffsets[node], upInWeight[node].length);
+                System.arraycopy(upInMiddle[node], 0, inMiddles, inOffsets[node], upInMiddle[node].length);
+            }
+
+            return new ContractionHierarchy(graph.getVersion(), hashGraph(graph), ranks,
+                    outOffsets, outTargets, outWeights, outMiddles,
+                    inOffsets, inSources, inWeights, inMiddles);
+        }
+    }
+
+    // Shortcuts found for one node, applied after the parallel phase
+    private static class Shortcuts {
+        private int[] from = new int[4];
+        private int[] to = new int[4];
+        private double[] weight = new double[4];
+        private int[] middle = new int[4];
+        int size;
+
+        void add(int a, int b, double w, int m) {
+            if (size == from.length) {
+                from = Arrays.copyOf(from, size * 2);
+                to = Arrays.copyOf(to, size * 2);
+                weight = Arrays.copyOf(weight, size * 2);
+                middle = Arrays.copyOf(middle, size * 2);
+            }
+            from[size] = a;
+            to[size] = b;
+            weight[size] = w;
+            middle[size] = m;
+            size++;
+        }
+
+        void applyTo(Contractor contractor) {
+            for (int i = 0; i < size; i++) {
+                contractor.addOrImprove(from[i], to[i], weight[i], middle[i]);
+            }
+        }
+    }
+
+    // Bounded local Dijkstra used to look for paths that make a shortcut unnecessary.
+    // One per thread; arrays are reset lazily with an epoch stamp.
+    private static class WitnessSearch {
+        private final double[] distances;
+        private final int[] stamps;
+        private final int[] targetStamps;
+        private final IndexedMinHeap heap;
+        private int epoch;
+
+        WitnessSearch(int n) {
+            distances = new double[n];
+            stamps = new int[n];
+            targetStamps = new int[n];
+            heap = new IndexedMinHeap(n);
+        }
+
+        // Search from source without passing through avoid, stopping once every other
+        // neighbour of avoid is settled, the limit is exceeded or the budget runs out
+        void run(Contractor contractor, int source, int avoid, double limit, int settleLimit) {
+            int order = contractor.batchOrder[avoid];
+            epoch++;
+            heap.clear();
+
+            int targetsLeft = 0;
+            for (int i = 0; i < contractor.outSize[avoid]; i++) {
+                int target = contractor.outTarget[avoid][i];
+                if (target != source) {
+                    targetStamps[target] = epoch;
+                    targetsLeft++;
+                }
+            }
+
+            stamps[source] = epoch;
+            distances[source] = 0;
+            heap.insert(source, 0);
+            int settled = 0;
+
+            while (!heap.isEmpty() && settled < settleLimit) {
+                if (heap.minKey() > limit) {
+                    break;
+                }
+                int node = heap.pollMin();
+                settled++;
+                if (targetStamps[node] == epoch && --targetsLeft == 0) {
+                    break;
+                }
+
+                for (int i = 0; i < contractor.outSize[node]; i++) {
+                    int next = contractor.outTarget[node][i];
+                    int nextOrder = contractor.batchOrder[next];
+                    if (next == avoid || (nextOrder != 0 && nextOrder < order)) {
+                        continue;
+                    }
+                    double distance = distances[node] + contractor.outWeight[node][i];
+                    if (stamps[next] != epoch || distance < distances[next]) {
+                        stamps[next] = epoch;
+                        distances[next] = distance;
+                        heap.insertOrDecrease(next, distance);
+                    }
+                }
+            }
+        }
+
+        double distanceTo(int node) {
+            return stamps[node] == epoch ? distances[node] : Double.MAX_VALUE;
+        }
+    }
+}
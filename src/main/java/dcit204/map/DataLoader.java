@@ -1,80 +1,262 @@
 package dcit204.map;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 
 public class DataLoader {
-    private Map<String, Map<String, Double>> graph;
-    private List<String> locations;
-    private List<String> landmarks;
+    private static final System.Logger LOG = System.getLogger(DataLoader.class.getName());
+
+    // Binary snapshot of the bundled data.json, written after the first successful load
+    private static final Path SNAPSHOT_PATH =
+            Paths.get(System.getProperty("user.home"), ".ug-navigation", "campus-graph.bin");
+
+    // Links of a place added by name only: the shortest one, and the length used when the
+    // places it links to have no coordinates either
+    private static final double MIN_LINK_METERS = 100;
+    private static final double DEFAULT_LINK_METERS = 450;
+
+    private final GraphStore store;
+    private GraphJsonReader.LoadMetrics loadMetrics;
+
+    // Autocomplete over location and landmark names, kept in step with the graph
+    private final PrefixIndex prefixIndex = new PrefixIndex();
+    private final FuzzyIndex fuzzyIndex = new FuzzyIndex();
 
     public DataLoader() {
-        this.graph = new HashMap<>();
-        this.locations = new ArrayList<>();
-        this.landmarks = new ArrayList<>();
+        this.store = new GraphStore(new CampusGraph.Builder().build());
     }
 
     public void loadData() {
-        // Load hardcoded data since there's an issue with JSON library
+        // Prefer the bundled data.json, falling back to the hardcoded campus if it can't be read
+        URL resource = DataLoader.class.getResource("data.json");
+        if (resource != null) {
+            try {
+                long fingerprint = GraphSnapshot.fingerprint(resource);
+                if (loadSnapshot(SNAPSHOT_PATH, fingerprint)) {
+                    return;
+                }
+
+                try (InputStream in = resource.openStream()) {
+                    loadFrom(in);
+                }
+                saveSnapshot(SNAPSHOT_PATH, fingerprint);
+                return;
+            } catch (IOException e) {
+                LOG.log(System.Logger.Level.WARNING, "Could not read data.json, using built-in campus data", e);
+            }
+        }
+
         loadHardcodedData();
     }
 
+    // Load an external graph file, e.g. an imported campus-plus-city network.
+    // A snapshot is kept next to the file and reused until the file changes.
+    public void loadData(Path file) throws IOException {
+        Path snapshot = file.resolveSibling(file.getFileName() + ".snapshot");
+        long fingerprint = GraphSnapshot.fingerprint(file);
+        if (loadSnapshot(snapshot, fingerprint)) {
+            return;
+        }
+
+        try (InputStream in = Files.newInputStream(file)) {
+            loadFrom(in);
+        }
+        saveSnapshot(snapshot, fingerprint);
+    }
+
+    // Try the binary snapshot first; false means it is missing, stale or unreadable
+    private boolean loadSnapshot(Path snapshot, long fingerprint) {
+        try {
+            long startTime = System.nanoTime();
+            CampusGraph loaded = GraphSnapshot.read(snapshot, fingerprint);
+            if (loaded == null) {
+                return false;
+            }
+
+            store.publish(loaded);
+            indexNames(loaded);
+            loadMetrics = new GraphJsonReader.LoadMetrics(loaded.nodeCount(), loaded.edgeCount(),
+                    Files.size(snapshot), System.nanoTime() - startTime);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // A failed snapshot write only costs the next startup its fast path
+    private void saveSnapshot(Path snapshot, long fingerprint) {
+        try {
+            GraphSnapshot.write(store.current(), snapshot, fingerprint);
+        } catch (IOException e) {
+            LOG.log(System.Logger.Level.WARNING, "Could not write graph snapshot", e);
+        }
+    }
+
+    // Stream a JSON graph straight into a new compact graph
+    private void loadFrom(InputStream in) throws IOException {
+        CampusGraph.Builder builder = new CampusGraph.Builder();
+        GraphJsonReader.LoadMetrics metrics = new GraphJsonReader(in).readInto(builder);
+
+        store.publish(builder.build());
+        indexNames(store.current());
+        loadMetrics = metrics;
+    }
+
     // Method to add a custom location to the graph
     public void addCustomLocation(String location) {
-        if (!locations.contains(location)) {
-            locations.add(location);
-            graph.put(location, new HashMap<>());
+        addCustomLocations(Collections.singletonList(location));
+    }
+
+    // Add a custom location at a known position, wired to its nearest neighbours
+    public void addCustomLocation(String location, double latitude, double longitude) {
+        if (location == null || store.current().contains(location)) {
+            return;
+        }
+
+        store.update(builder -> {
+            if (!builder.contains(location)) {
+                builder.addLocation(location);
+                connectToNearestLocations(builder, location, latitude, longitude, 3);
+            }
+        });
+        prefixIndex.add(location);
+        fuzzyIndex.add(location);
+    }
+
+    // Add several custom locations as a single new graph version
+    public void addCustomLocations(Collection<String> newLocations) {
+        CampusGraph snapshot = store.current();
+        boolean anyNew = false;
+        for (String location : newLocations) {
+            if (location != null && !snapshot.contains(location)) {
+                anyNew = true;
+            }
+        }
+        if (!anyNew) {
+            return;  // Nothing to add, keep the current version
+        }
 
-            // Connect this location to the nearest three known locations
-            // This is a simplification - in a real app, you'd use geographic coordinates
-            connectToNearestLocations(location, 3);
+        store.update(builder -> {
+            for (String location : newLocations) {
+                if (location != null && !builder.contains(location)) {
+                    builder.addLocation(location);
+                    connectWithoutPosition(builder, location, 3);
+                }
+            }
+        });
+        for (String location : newLocations) {
+            prefixIndex.add(location);
+            fuzzyIndex.add(location);
         }
     }
 
     // Method to add a custom landmark
     public void addCustomLandmark(String landmark) {
-        if (!landmarks.contains(landmark)) {
-            landmarks.add(landmark);
+        if (landmark == null || store.current().getLandmarkNames().contains(landmark)) {
+            return;
+        }
 
+        store.update(builder -> {
             // If it's also a location, it's already in the graph
             // Otherwise, add it as a location too
-            if (!locations.contains(landmark)) {
-                addCustomLocation(landmark);
+            if (!builder.contains(landmark)) {
+                builder.addLocation(landmark);
+                connectWithoutPosition(builder, landmark, 3);
             }
-        }
+            builder.addLandmark(landmark);
+        });
+        prefixIndex.add(landmark);
+        fuzzyIndex.add(landmark);
     }
 
-    // Connect a new location to some existing locations
-    private void connectToNearestLocations(String newLocation, int numberOfConnections) {
-        // This is a simplified version - in a real app, you'd use geographic coordinates
-        List<String> otherLocations = new ArrayList<>(locations);
-        otherLocations.remove(newLocation);
-
-        // Shuffle to randomize connections
-        Collections.shuffle(otherLocations);
+    // Closest graph node to an arbitrary GPS position, or null if no node has coordinates
+    public String findNearestLocation(double latitude, double longitude) {
+        CampusGraph graph = store.current();
+        int node = graph.getSpatialIndex().nearest(latitude, longitude);
+        return node == CampusGraph.NO_NODE ? null : graph.nameOf(node);
+    }
 
-        // Connect to the first N locations
-        for (int i = 0; i < Math.min(numberOfConnections, otherLocations.size()); i++) {
-            String otherLocation = otherLocations.get(i);
+    // Connect a new location to the k nearest nodes, using straight-line distances as edge weights
+    private void connectToNearestLocations(CampusGraph.Builder builder, String newLocation,
+                                           double latitude, double longitude, int numberOfConnections) {
+        CampusGraph base = builder.getBase();
+        int id = builder.setCoordinates(newLocation, latitude, longitude);
 
-            // Generate a random distance between 100 and 800 meters
-            double distance = 100 + Math.random() * 700;
+        for (int neighbor : base.getSpatialIndex().nearest(latitude, longitude, numberOfConnections)) {
+            double distance = GeoMath.haversine(latitude, longitude,
+                    base.latitude(neighbor), base.longitude(neighbor));
 
             // Add bidirectional connection
-            if (!graph.containsKey(newLocation)) {
-                graph.put(newLocation, new HashMap<>());
+            builder.addEdge(id, neighbor, distance);
+            builder.addEdge(neighbor, id, distance);
+        }
+    }
+
+    // A location typed in by name has no position, so it gets none. It is linked both ways to
+    // the best-connected place and the places nearest that one, so the same graph always wires
+    // it the same way. Each link is half the widest straight-line gap between those places:
+    // no route through the new place is then shorter than the straight line it bridges, which
+    // keeps A*'s straight-line bound as tight as before. Pass coordinates to addCustomLocation
+    // for a place wired to where it really is.
+    private void connectWithoutPosition(CampusGraph.Builder builder, String newLocation, int numberOfConnections) {
+        CampusGraph base = builder.getBase();
+        int[] neighbors = bestConnectedLocations(base, numberOfConnections);
+        if (neighbors.length == 0) {
+            return;  // Nothing to connect to yet
+        }
+
+        double distance = DEFAULT_LINK_METERS;
+        int hub = neighbors[0];
+        if (base.hasCoordinates(hub)) {
+            neighbors = base.getSpatialIndex().nearest(base.latitude(hub), base.longitude(hub), numberOfConnections);
+            double widest = 0;
+            for (int a : neighbors) {
+                for (int b : neighbors) {
+                    widest = Math.max(widest, GeoMath.haversine(base.latitude(a), base.longitude(a),
+                            base.latitude(b), base.longitude(b)));
+                }
             }
-            graph.get(newLocation).put(otherLocation, distance);
+            distance = Math.max(MIN_LINK_METERS, widest / 2);
+        }
+
+        int id = builder.addLocation(newLocation);
+        for (int neighbor : neighbors) {
+            builder.addEdge(id, neighbor, distance);
+            builder.addEdge(neighbor, id, distance);
+        }
+    }
 
-            if (!graph.containsKey(otherLocation)) {
-                graph.put(otherLocation, new HashMap<>());
+    // Up to count locations with the most outgoing edges, ties broken by id
+    private static int[] bestConnectedLocations(CampusGraph graph, int count) {
+        List<Integer> locations = new ArrayList<>();
+        for (int node = 0; node < graph.nodeCount(); node++) {
+            if (graph.isLocation(node)) {
+                locations.add(node);
             }
-            graph.get(otherLocation).put(newLocation, distance);
         }
+        locations.sort((a, b) -> {
+            int byDegree = Integer.compare(graph.firstEdge(b + 1) - graph.firstEdge(b),
+                    graph.firstEdge(a + 1) - graph.firstEdge(a));
+            return byDegree != 0 ? byDegree : Integer.compare(a, b);
+        });
+
+        int[] result = new int[Math.min(count, locations.size())];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = locations.get(i);
+        }
+        return result;
     }
 
     private void loadHardcodedData() {
+        CampusGraph.Builder builder = new CampusGraph.Builder();
+
         // Hardcoded data for UG campus locations and distances
-        locations = Arrays.asList(
+        List<String> locations = Arrays.asList(
                 "Main Gate",
                 "Commonwealth Hall",
                 "Legon Hall",
@@ -95,7 +277,7 @@ public class DataLoader {
                 "TF Hostel"
         );
 
-        landmarks = Arrays.asList(
+        List<String> landmarks = Arrays.asList(
                 "Balme Library",
                 "Great Hall",
                 "UGCS Bank",
@@ -106,144 +288,169 @@ public class DataLoader {
                 "Business School"
         );
 
+        for (String location : locations) {
+            builder.addLocation(location);
+        }
+        for (String landmark : landmarks) {
+            builder.addLandmark(landmark);
+        }
+
+        // Approximate positions (latitude, longitude) on the Legon campus
+        builder.setCoordinates("Main Gate", 5.650500, -0.187000);
+        builder.setCoordinates("Commonwealth Hall", 5.654465, -0.183333);
+        builder.setCoordinates("Legon Hall", 5.655932, -0.182341);
+        builder.setCoordinates("Akuafo Hall", 5.656468, -0.180908);
+        builder.setCoordinates("Balme Library", 5.654099, -0.179892);
+        builder.setCoordinates("JQB Building", 5.653257, -0.178633);
+        builder.setCoordinates("Mathematics Department", 5.652418, -0.179136);
+        builder.setCoordinates("Computer Science Department", 5.651691, -0.178388);
+        builder.setCoordinates("School of Engineering", 5.650309, -0.179034);
+        builder.setCoordinates("Business School", 5.648916, -0.182026);
+        builder.setCoordinates("UGCS Bank", 5.647451, -0.183178);
+        builder.setCoordinates("Great Hall", 5.652466, -0.184650);
+        builder.setCoordinates("Athletic Oval", 5.657005, -0.184933);
+        builder.setCoordinates("Night Market", 5.658657, -0.181469);
+        builder.setCoordinates("Diaspora", 5.661054, -0.183230);
+        builder.setCoordinates("International Students Hostel", 5.663155, -0.182251);
+        builder.setCoordinates("Valco Trust Hostel", 5.665477, -0.184382);
+        builder.setCoordinates("TF Hostel", 5.663647, -0.185694);
+
         // Create the graph with distances (in meters)
 
         // Main Gate connections
-        Map<String, Double> mainGateNeighbors = new HashMap<>();
-        mainGateNeighbors.put("Great Hall", 400.0);
-        mainGateNeighbors.put("UGCS Bank", 600.0);
-        graph.put("Main Gate", mainGateNeighbors);
+        builder.addEdge("Main Gate", "Great Hall", 400.0);
+        builder.addEdge("Main Gate", "UGCS Bank", 600.0);
 
         // Great Hall connections
-        Map<String, Double> greatHallNeighbors = new HashMap<>();
-        greatHallNeighbors.put("Main Gate", 400.0);
-        greatHallNeighbors.put("Commonwealth Hall", 300.0);
-        greatHallNeighbors.put("Business School", 500.0);
-        graph.put("Great Hall", greatHallNeighbors);
+        builder.addEdge("Great Hall", "Main Gate", 400.0);
+        builder.addEdge("Great Hall", "Commonwealth Hall", 300.0);
+        builder.addEdge("Great Hall", "Business School", 500.0);
 
         // Commonwealth Hall connections
-        Map<String, Double> commonwealthNeighbors = new HashMap<>();
-        commonwealthNeighbors.put("Great Hall", 300.0);
-        commonwealthNeighbors.put("Legon Hall", 250.0);
-        commonwealthNeighbors.put("Balme Library", 400.0);
-        commonwealthNeighbors.put("Athletic Oval", 350.0);
-        graph.put("Commonwealth Hall", commonwealthNeighbors);
+        builder.addEdge("Commonwealth Hall", "Great Hall", 300.0);
+        builder.addEdge("Commonwealth Hall", "Legon Hall", 250.0);
+        builder.addEdge("Commonwealth Hall", "Balme Library", 400.0);
+        builder.addEdge("Commonwealth Hall", "Athletic Oval", 350.0);
 
         // Legon Hall connections
-        Map<String, Double> legonHallNeighbors = new HashMap<>();
-        legonHallNeighbors.put("Commonwealth Hall", 250.0);
-        legonHallNeighbors.put("Akuafo Hall", 200.0);
-        legonHallNeighbors.put("Night Market", 450.0);
-        graph.put("Legon Hall", legonHallNeighbors);
+        builder.addEdge("Legon Hall", "Commonwealth Hall", 250.0);
+        builder.addEdge("Legon Hall", "Akuafo Hall", 200.0);
+        builder.addEdge("Legon Hall", "Night Market", 450.0);
 
         // Akuafo Hall connections
-        Map<String, Double> akuafoHallNeighbors = new HashMap<>();
-        akuafoHallNeighbors.put("Legon Hall", 200.0);
-        akuafoHallNeighbors.put("Balme Library", 350.0);
-        akuafoHallNeighbors.put("Night Market", 300.0);
-        graph.put("Akuafo Hall", akuafoHallNeighbors);
+        builder.addEdge("Akuafo Hall", "Legon Hall", 200.0);
+        builder.addEdge("Akuafo Hall", "Balme Library", 350.0);
+        builder.addEdge("Akuafo Hall", "Night Market", 300.0);
 
         // Balme Library connections
-        Map<String, Double> balmeLibraryNeighbors = new HashMap<>();
-        balmeLibraryNeighbors.put("Commonwealth Hall", 400.0);
-        balmeLibraryNeighbors.put("Akuafo Hall", 350.0);
-        balmeLibraryNeighbors.put("JQB Building", 200.0);
-        balmeLibraryNeighbors.put("Mathematics Department", 250.0);
-        graph.put("Balme Library", balmeLibraryNeighbors);
+        builder.addEdge("Balme Library", "Commonwealth Hall", 400.0);
+        builder.addEdge("Balme Library", "Akuafo Hall", 350.0);
+        builder.addEdge("Balme Library", "JQB Building", 200.0);
+        builder.addEdge("Balme Library", "Mathematics Department", 250.0);
 
         // JQB Building connections
-        Map<String, Double> jqbBuildingNeighbors = new HashMap<>();
-        jqbBuildingNeighbors.put("Balme Library", 200.0);
-        jqbBuildingNeighbors.put("Mathematics Department", 150.0);
-        jqbBuildingNeighbors.put("Computer Science Department", 200.0);
-        graph.put("JQB Building", jqbBuildingNeighbors);
+        builder.addEdge("JQB Building", "Balme Library", 200.0);
+        builder.addEdge("JQB Building", "Mathematics Department", 150.0);
+        builder.addEdge("JQB Building", "Computer Science Department", 200.0);
 
         // Mathematics Department connections
-        Map<String, Double> mathDeptNeighbors = new HashMap<>();
-        mathDeptNeighbors.put("Balme Library", 250.0);
-        mathDeptNeighbors.put("JQB Building", 150.0);
-        mathDeptNeighbors.put("Computer Science Department", 150.0);
-        mathDeptNeighbors.put("School of Engineering", 300.0);
-        graph.put("Mathematics Department", mathDeptNeighbors);
+        builder.addEdge("Mathematics Department", "Balme Library", 250.0);
+        builder.addEdge("Mathematics Department", "JQB Building", 150.0);
+        builder.addEdge("Mathematics Department", "Computer Science Department", 150.0);
+        builder.addEdge("Mathematics Department", "School of Engineering", 300.0);
 
         // Computer Science Department connections
-        Map<String, Double> csDeptNeighbors = new HashMap<>();
-        csDeptNeighbors.put("JQB Building", 200.0);
-        csDeptNeighbors.put("Mathematics Department", 150.0);
-        csDeptNeighbors.put("School of Engineering", 200.0);
-        graph.put("Computer Science Department", csDeptNeighbors);
+        builder.addEdge("Computer Science Department", "JQB Building", 200.0);
+        builder.addEdge("Computer Science Department", "Mathematics Department", 150.0);
+        builder.addEdge("Computer Science Department", "School of Engineering", 200.0);
 
         // School of Engineering connections
-        Map<String, Double> engineeringNeighbors = new HashMap<>();
-        engineeringNeighbors.put("Mathematics Department", 300.0);
-        engineeringNeighbors.put("Computer Science Department", 200.0);
-        engineeringNeighbors.put("Business School", 400.0);
-        graph.put("School of Engineering", engineeringNeighbors);
+        builder.addEdge("School of Engineering", "Mathematics Department", 300.0);
+        builder.addEdge("School of Engineering", "Computer Science Department", 200.0);
+        builder.addEdge("School of Engineering", "Business School", 400.0);
 
         // Business School connections
-        Map<String, Double> businessSchoolNeighbors = new HashMap<>();
-        businessSchoolNeighbors.put("Great Hall", 500.0);
-        businessSchoolNeighbors.put("School of Engineering", 400.0);
-        businessSchoolNeighbors.put("UGCS Bank", 250.0);
-        graph.put("Business School", businessSchoolNeighbors);
+        builder.addEdge("Business School", "Great Hall", 500.0);
+        builder.addEdge("Business School", "School of Engineering", 400.0);
+        builder.addEdge("Business School", "UGCS Bank", 250.0);
 
         // UGCS Bank connections
-        Map<String, Double> bankNeighbors = new HashMap<>();
-        bankNeighbors.put("Main Gate", 600.0);
-        bankNeighbors.put("Business School", 250.0);
-        graph.put("UGCS Bank", bankNeighbors);
+        builder.addEdge("UGCS Bank", "Main Gate", 600.0);
+        builder.addEdge("UGCS Bank", "Business School", 250.0);
 
         // Athletic Oval connections
-        Map<String, Double> athleticOvalNeighbors = new HashMap<>();
-        athleticOvalNeighbors.put("Commonwealth Hall", 350.0);
-        athleticOvalNeighbors.put("Night Market", 500.0);
-        athleticOvalNeighbors.put("Diaspora", 550.0);
-        graph.put("Athletic Oval", athleticOvalNeighbors);
+        builder.addEdge("Athletic Oval", "Commonwealth Hall", 350.0);
+        builder.addEdge("Athletic Oval", "Night Market", 500.0);
+        builder.addEdge("Athletic Oval", "Diaspora", 550.0);
 
         // Night Market connections
-        Map<String, Double> nightMarketNeighbors = new HashMap<>();
-        nightMarketNeighbors.put("Legon Hall", 450.0);
-        nightMarketNeighbors.put("Akuafo Hall", 300.0);
-        nightMarketNeighbors.put("Athletic Oval", 500.0);
-        nightMarketNeighbors.put("Diaspora", 400.0);
-        graph.put("Night Market", nightMarketNeighbors);
+        builder.addEdge("Night Market", "Legon Hall", 450.0);
+        builder.addEdge("Night Market", "Akuafo Hall", 300.0);
+        builder.addEdge("Night Market", "Athletic Oval", 500.0);
+        builder.addEdge("Night Market", "Diaspora", 400.0);
 
         // Diaspora connections
-        Map<String, Double> diasporaNeighbors = new HashMap<>();
-        diasporaNeighbors.put("Athletic Oval", 550.0);
-        diasporaNeighbors.put("Night Market", 400.0);
-        diasporaNeighbors.put("International Students Hostel", 300.0);
-        diasporaNeighbors.put("TF Hostel", 450.0);
-        graph.put("Diaspora", diasporaNeighbors);
+        builder.addEdge("Diaspora", "Athletic Oval", 550.0);
+        builder.addEdge("Diaspora", "Night Market", 400.0);
+        builder.addEdge("Diaspora", "International Students Hostel", 300.0);
+        builder.addEdge("Diaspora", "TF Hostel", 450.0);
 
         // International Students Hostel connections
-        Map<String, Double> ishNeighbors = new HashMap<>();
-        ishNeighbors.put("Diaspora", 300.0);
-        ishNeighbors.put("Valco Trust Hostel", 400.0);
-        graph.put("International Students Hostel", ishNeighbors);
+        builder.addEdge("International Students Hostel", "Diaspora", 300.0);
+        builder.addEdge("International Students Hostel", "Valco Trust Hostel", 400.0);
 
         // Valco Trust Hostel connections
-        Map<String, Double> valcoNeighbors = new HashMap<>();
-        valcoNeighbors.put("International Students Hostel", 400.0);
-        valcoNeighbors.put("TF Hostel", 300.0);
-        graph.put("Valco Trust Hostel", valcoNeighbors);
+        builder.addEdge("Valco Trust Hostel", "International Students Hostel", 400.0);
+        builder.addEdge("Valco Trust Hostel", "TF Hostel", 300.0);
 
         // TF Hostel connections
-        Map<String, Double> tfHostelNeighbors = new HashMap<>();
-        tfHostelNeighbors.put("Diaspora", 450.0);
-        tfHostelNeighbors.put("Valco Trust Hostel", 300.0);
-        graph.put("TF Hostel", tfHostelNeighbors);
+        builder.addEdge("TF Hostel", "Diaspora", 450.0);
+        builder.addEdge("TF Hostel", "Valco Trust Hostel", 300.0);
+
+        store.publish(builder.build());
+        indexNames(store.current());
     }
 
+    // Legacy nested-map view of the graph, rebuilt on each call
     public Map<String, Map<String, Double>> getGraph() {
-        return graph;
+        return store.current().toMap();
+    }
+
+    // Current immutable graph version; hold on to it for the duration of a query
+    public CampusGraph getCampusGraph() {
+        return store.current();
+    }
+
+    public GraphStore getGraphStore() {
+        return store;
+    }
+
+    // Metrics of the last JSON or snapshot load, or null if the hardcoded data is in use
+    public GraphJsonReader.LoadMetrics getLoadMetrics() {
+        return loadMetrics;
     }
 
     public List<String> getLocations() {
-        return new ArrayList<>(locations);  // Return a copy to prevent modification
+        return store.current().getLocationNames();  // Fresh list, safe to modify
     }
 
     public List<String> getLandmarks() {
-        return new ArrayList<>(landmarks);  // Return a copy to prevent modification
+        return store.current().getLandmarkNames();  // Fresh list, safe to modify
+    }
+
+    public PrefixIndex getPrefixIndex() {
+        return prefixIndex;
+    }
+
+    public FuzzyIndex getFuzzyIndex() {
+        return fuzzyIndex;
+    }
+
+    // Add every location and landmark of a newly published graph; names already indexed are skipped
+    private void indexNames(CampusGraph graph) {
+        prefixIndex.addAll(graph.getLocationNames());
+        prefixIndex.addAll(graph.getLandmarkNames());
+        fuzzyIndex.addAll(graph.getLocationNames());
+        fuzzyIndex.addAll(graph.getLandmarkNames());
     }
 }
\ No newline at end of file
@@ -6,71 +6,138 @@ public class DistanceCalculator {
 
     // Calculate distance between two locations in the graph
     public double calculateDistance(String start, String end, Map<String, Map<String, Double>> graph) {
-        // Use Dijkstra's algorithm to find the shortest path
-        Map<String, Double> distances = new HashMap<>();
-        PriorityQueue<Node> priorityQueue = new PriorityQueue<>(
-                Comparator.comparingDouble(node -> node.distance)
-        );
-        Set<String> visited = new HashSet<>();
-
-        // Initialize
-        for (String vertex : graph.keySet()) {
-            if (vertex.equals(start)) {
-                distances.put(vertex, 0.0);
-                priorityQueue.add(new Node(vertex, 0.0));
-            } else {
-                distances.put(vertex, Double.MAX_VALUE);
-                priorityQueue.add(new Node(vertex, Double.MAX_VALUE));
-            }
+        return calculateDistance(start, end, CampusGraph.fromMap(graph));
+    }
+
+    // Calculate distance between two locations on the compact graph
+    public double calculateDistance(String start, String end, CampusGraph graph) {
+        int source = graph.idOf(start);
+        int target = graph.idOf(end);
+        if (source == CampusGraph.NO_NODE || target == CampusGraph.NO_NODE) {
+            return Double.MAX_VALUE;
         }
+        return calculateDistance(source, target, graph);
+    }
 
-        // Process vertices
-        while (!priorityQueue.isEmpty()) {
-            Node current = priorityQueue.poll();
+    // Use Dijkstra's algorithm to find the shortest path between two node ids
+    double calculateDistance(int start, int end, CampusGraph graph) {
+        return calculateDistances(start, new int[]{end}, graph)[0];
+    }
 
-            if (visited.contains(current.name)) {
-                continue;
+    // Distances from one location to many; unknown or unreachable targets get Double.MAX_VALUE
+    public double[] calculateDistances(String source, List<String> targets, CampusGraph graph) {
+        int[] targetIds = new int[targets.size()];
+        for (int i = 0; i < targetIds.length; i++) {
+            targetIds[i] = graph.idOf(targets.get(i));
+        }
+
+        int sourceId = graph.idOf(source);
+        if (sourceId == CampusGraph.NO_NODE) {
+            double[] result = new double[targetIds.length];
+            Arrays.fill(result, Double.MAX_VALUE);
+            return result;
+        }
+        return calculateDistances(sourceId, targetIds, graph);
+    }
+
+    // One Dijkstra search from start that stops as soon as every target is settled
+    double[] calculateDistances(int start, int[] targets, CampusGraph graph) {
+        return calculateDistances(start, targets, graph, null);
+    }
+
+    // As above; if searched is not null, every node the search settled is added to it
+    double[] calculateDistances(int start, int[] targets, CampusGraph graph, BitSet searched) {
+        SearchWorkspace search = SearchWorkspace.acquire(graph.nodeCount());
+        try {
+            searchToAll(graph, start, targets, search);
+            if (searched != null) {
+                for (int i = 0; i < search.settledCount(); i++) {
+                    searched.set(search.settledNode(i));
+                }
+            }
+
+            double[] result = new double[targets.length];
+            for (int i = 0; i < targets.length; i++) {
+                int target = targets[i];
+                result[i] = target != CampusGraph.NO_NODE && search.isSettled(target)
+                        ? search.distance(target) : Double.MAX_VALUE;
+            }
+            return result;
+        } finally {
+            search.release();
+        }
+    }
+
+    // Dijkstra from start on a fresh workspace until every target (NO_NODE entries ignored) is
+    // settled. Distances and parents stay in the workspace for the caller to read; returns the
+    // number of settled nodes.
+    static int searchToAll(CampusGraph graph, int start, int[] targets, SearchWorkspace search) {
+        IndexedMinHeap priorityQueue = search.heap();
+
+        // Count distinct targets so duplicates don't keep the search running
+        int remaining = 0;
+        for (int target : targets) {
+            if (target != CampusGraph.NO_NODE && !search.isMarked(target)) {
+                search.mark(target);
+                remaining++;
             }
+        }
+
+        // Initialize; other vertices enter the queue when first reached
+        search.reach(start, 0.0, CampusGraph.NO_NODE);
+        priorityQueue.insert(start, 0.0);
+        int settled = 0;
 
-            visited.add(current.name);
+        // Process vertices
+        while (remaining > 0 && !priorityQueue.isEmpty()) {
+            int current = priorityQueue.pollMin();
+            search.settle(current);
+            settled++;
 
-            if (current.name.equals(end)) {
-                return distances.get(end);
+            if (search.isMarked(current)) {
+                remaining--;
             }
 
             // Explore neighbors
-            Map<String, Double> neighbors = graph.get(current.name);
-            if (neighbors != null) {
-                for (Map.Entry<String, Double> neighbor : neighbors.entrySet()) {
-                    if (!visited.contains(neighbor.getKey())) {
-                        double newDist = distances.get(current.name) + neighbor.getValue();
-
-                        if (newDist < distances.get(neighbor.getKey())) {
-                            // Found a better path
-                            distances.put(neighbor.getKey(), newDist);
-
-                            // Update priority queue
-                            priorityQueue.add(new Node(neighbor.getKey(), newDist));
-                        }
+            for (int e = graph.firstEdge(current); e < graph.firstEdge(current + 1); e++) {
+                int neighbor = graph.edgeTarget(e);
+                if (!search.isSettled(neighbor)) {
+                    double newDist = search.distance(current) + graph.edgeWeight(e);
+
+                    if (!search.isReached(neighbor) || newDist < search.distance(neighbor)) {
+                        // Found a better path
+                        search.reach(neighbor, newDist, current);
+
+                        // Update priority queue
+                        priorityQueue.insertOrDecrease(neighbor, newDist);
                     }
                 }
             }
         }
-
-        return distances.getOrDefault(end, Double.MAX_VALUE);
+        return settled;
     }
 
     // Calculate the total distance of a path
     public double calculatePathDistance(List<String> path, Map<String, Map<String, Double>> graph) {
+        return calculatePathDistance(path, CampusGraph.fromMap(graph));
+    }
+
+    // Calculate the total distance of a path on the compact graph
+    public double calculatePathDistance(List<String> path, CampusGraph graph) {
         double totalDistance = 0.0;
 
         for (int i = 0; i < path.size() - 1; i++) {
-            String current = path.get(i);
-            String next = path.get(i + 1);
+            int current = graph.idOf(path.get(i));
+            int next = graph.idOf(path.get(i + 1));
+
+            if (current == CampusGraph.NO_NODE || next == CampusGraph.NO_NODE) {
+                totalDistance += Double.MAX_VALUE;
+                continue;
+            }
 
-            Map<String, Double> neighbors = graph.get(current);
-            if (neighbors != null && neighbors.containsKey(next)) {
-                totalDistance += neighbors.get(next);
+            int edge = graph.findEdge(current, next);
+            if (edge >= 0) {
+                totalDistance += graph.edgeWeight(edge);
             } else {
                 // If direct edge doesn't exist, use the shortest path
                 totalDistance += calculateDistance(current, next, graph);
@@ -80,17 +147,6 @@ public class DistanceCalculator {
         return totalDistance;
     }
 
-    // Helper class for nodes in Dijkstra's algorithm
-    private static class Node {
-        String name;
-        double distance;
-
-        Node(String name, double distance) {
-            this.name = name;
-            this.distance = distance;
-        }
-    }
-
     // Implement Vogel's Approximation Method for finding initial solution
     public Map<String, String> vogelApproximationMethod(Map<String, Map<String, Double>> graph) {
         // This is a simplified implementation of VAM for the route-finding context
@@ -0,0 +1,204 @@
+package dcit204.map;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+// All-pairs distance matrix over a set of named places (landmarks, key locations).
+// Each row is one one-to-many search, and rows are computed in parallel on a ForkJoinPool.
+// Distances live in one flat row-major double[]; unreachable pairs hold Double.MAX_VALUE.
+//
+// Every row also remembers the set of nodes its search settled. After a graph edit only
+// rows whose search settled a node with changed outgoing edges can change, because any
+// path using a changed edge first has to reach that node, and every other row is reused.
+public class DistanceMatrix {
+    private final CampusGraph graph;
+    private final List<String> names;
+    private final int[] ids;
+    private final double[] distances;
+    private final BitSet[] searched;
+    private final int recomputedRows;
+
+    private DistanceMatrix(CampusGraph graph, List<String> names, int[] ids, double[] distances,
+                           BitSet[] searched, int recomputedRows) {
+        this.graph = graph;
+        this.names = names;
+        this.ids = ids;
+        this.distances = distances;
+        this.searched = searched;
+        this.recomputedRows = recomputedRows;
+    }
+
+    // Build the matrix on the common pool
+    public static DistanceMatrix build(CampusGraph graph, List<String> names) {
+        return build(graph, names, ForkJoinPool.commonPool());
+    }
+
+    public static DistanceMatrix build(CampusGraph graph, List<String> names, ForkJoinPool pool) {
+        List<String> places = Collections.unmodifiableList(new ArrayList<>(names));
+        int[] ids = resolve(graph, places);
+        int size = ids.length;
+
+        double[] distances = new double[size * size];
+        BitSet[] searched = new BitSet[size];
+        boolean[] rows = new boolean[size];
+        Arrays.fill(rows, true);
+
+        computeRows(graph, ids, rows, distances, searched, pool);
+        return new DistanceMatrix(graph, places, ids, distances, searched, size);
+    }
+
+    // Matrix for an edited version of the graph, recomputing only the rows the edit can affect.
+    // Node ids must be stable between the versions, as they are for GraphStore.update; if they
+    // are not (or a place has appeared or disappeared) the whole matrix is rebuilt.
+    public DistanceMatrix update(CampusGraph newGraph, ForkJoinPool pool) {
+        if (newGraph.getVersion() == graph.getVersion()) {
+            return this;
+        }
+
+        int[] newIds = resolve(newGraph, names);
+        if (!Arrays.equals(ids, newIds) || !sameNodes(graph, newGraph)) {
+            return build(newGraph, names, pool);
+        }
+
+        BitSet changed = changedNodes(graph, newGraph);
+        int size = ids.length;
+        boolean[] rows = new boolean[size];
+        int affected = 0;
+        for (int row = 0; row < size; row++) {
+            rows[row] = ids[row] != CampusGraph.NO_NODE && searched[row].intersects(changed);
+            if (rows[row]) {
+                affected++;
+            }
+        }
+
+        double[] newDistances = distances.clone();
+        BitSet[] newSearched = searched.clone();
+        computeRows(newGraph, ids, rows, newDistances, newSearched, pool);
+        return new DistanceMatrix(newGraph, names, ids, newDistances, newSearched, affected);
+    }
+
+    public DistanceMatrix update(CampusGraph newGraph) {
+        return update(newGraph, ForkJoinPool.commonPool());
+    }
+
+    public long getGraphVersion() {
+        return graph.getVersion();
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public List<String> getNames() {
+        return names;
+    }
+
+    public int indexOf(String name) {
+        return names.indexOf(name);
+    }
+
+    // Number of rows searched when this matrix was produced
+    public int getRecomputedRows() {
+        return recomputedRows;
+    }
+
+    public double distance(int from, int to) {
+        return distances[from * ids.length + to];
+    }
+
+    public double distance(String from, String to) {
+        int row = indexOf(from);
+        int column = indexOf(to);
+        if (row < 0 || column < 0) {
+            return Double.MAX_VALUE;
+        }
+        return distance(row, column);
+    }
+
+    // Walking time in minutes, using the same 60m per minute estimate as route options
+    public int time(int from, int to) {
+        double distance = distance(from, to);
+        return distance == Double.MAX_VALUE ? Integer.MAX_VALUE : (int) Math.ceil(distance / 60);
+    }
+
+    private static void computeRows(CampusGraph graph, int[] ids, boolean[] rows, double[] distances,
+                                    BitSet[] searched, ForkJoinPool pool) {
+        int size = ids.length;
+        List<Callable<Void>> tasks = new ArrayList<>();
+
+        for (int row = 0; row < size; row++) {
+            if (!rows[row]) {
+                continue;
+            }
+            final int source = row;
+            tasks.add(() -> {
+                BitSet ball = new BitSet();
+                if (ids[source] == CampusGraph.NO_NODE) {
+                    Arrays.fill(distances, source * size, (source + 1) * size, Double.MAX_VALUE);
+                } else {
+                    double[] values = new DistanceCalculator().calculateDistances(ids[source], ids, graph, ball);
+                    System.arraycopy(values, 0, distances, source * size, size);
+                }
+                searched[source] = ball;
+                return null;
+            });
+        }
+
+        // Rows write disjoint slices of the shared arrays, and invokeAll waits for all of them
+        for (Future<Void> result : pool.invokeAll(tasks)) {
+            try {
+                result.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Distance matrix computation interrupted", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Distance matrix row failed", e.getCause());
+            }
+        }
+    }
+
+    private static int[] resolve(CampusGraph graph, List<String> names) {
+        int[] ids = new int[names.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = graph.idOf(names.get(i));
+        }
+        return ids;
+    }
+
+    // True if every node of the old graph has the same id in the new one
+    private static boolean sameNodes(CampusGraph oldGraph, CampusGraph newGraph) {
+        if (newGraph.nodeCount() < oldGraph.nodeCount()) {
+            return false;
+        }
+        for (int node = 0; node < oldGraph.nodeCount(); node++) {
+            if (!oldGraph.nameOf(node).equals(newGraph.nameOf(node))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Old nodes whose outgoing edges (targets or weights) differ between the two versions
+    private static BitSet changedNodes(CampusGraph oldGraph, CampusGraph newGraph) {
+        BitSet changed = new BitSet(oldGraph.nodeCount());
+
+        for (int node = 0; node < oldGraph.nodeCount(); node++) {
+            int oldFirst = oldGraph.firstEdge(node);
+            int newFirst = newGraph.firstEdge(node);
+            int degree = oldGraph.firstEdge(node + 1) - oldFirst;
+
+            if (newGraph.firstEdge(node + 1) - newFirst != degree) {
+                changed.set(node);
+                continue;
+            }
+            for (int i = 0; i < degree; i++) {
+                if (oldGraph.edgeTarget(oldFirst + i) != newGraph.edgeTarget(newFirst + i)
+                        || oldGraph.edgeWeight(oldFirst + i) != newGraph.edgeWeight(newFirst + i)) {
+                    changed.set(node);
+                    break;
+                }
+            }
+        }
+        return changed;
+    }
+}
@@ -0,0 +1,349 @@
+package dcit204.map;
+
+import java.util.*;
+
+// Typo-tolerant place search: "Balm Libary" finds "Balme Library".
+// A match is a name containing some stretch within k edits of the query (k grows with the
+// query length), so partial names work too. Two stages keep it fast:
+//  - filter: inverted indexes from trigrams and bigrams to names. A stretch within k edits
+//    of a query with t distinct trigrams still holds at least t - 3k of them, so for
+//    long queries only names reaching that count are looked at. Shorter queries use k + 1
+//    non-overlapping grams instead: k edits leave at least one of them intact, so only the
+//    names holding one are looked at, with the grams picked to have the fewest names;
+//  - verify: Myers' bit-parallel edit distance, which scans a name once with a few word
+//    operations per character, for queries of up to 64 characters.
+// Queries need at least two characters.
+public class FuzzyIndex {
+    public static final int MAX_QUERY_LENGTH = 64;
+
+    private final List<String> names = new ArrayList<>();
+    private final Set<String> known = new HashSet<>();
+    private final Map<Long, int[]> postings = new HashMap<>();  // Gram -> {length, ids...}
+
+    // Folded names back to back, name id's text at chars[starts[id] .. starts[id + 1]), so
+    // verification reads one contiguous run per candidate
+    private char[] chars = new char[256];
+    private int[] starts = new int[17];
+
+    // Per-name shared trigram counts (or a seen mark), valid where countStamp matches the search
+    private int[] counts = new int[16];
+    private int[] countStamp = new int[16];
+    private int searchEpoch;
+
+    public synchronized void add(String name) {
+        if (name == null || !known.add(name)) {
+            return;
+        }
+        int id = names.size();
+        names.add(name);
+        String text = PrefixIndex.fold(name);
+        if (id == counts.length) {
+            counts = Arrays.copyOf(counts, id * 2);
+            countStamp = Arrays.copyOf(countStamp, id * 2);
+            starts = Arrays.copyOf(starts, id * 2 + 1);
+        }
+        int end = starts[id] + text.length();
+        if (end > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(end, chars.length * 2));
+        }
+        text.getChars(0, text.length(), chars, starts[id]);
+        starts[id + 1] = end;
+
+        // Each distinct bigram and trigram of the name once
+        Set<Long> seen = new HashSet<>();
+        for (int i = 0; i + 2 <= text.length(); i++) {
+            post(seen, bigram(text, i), id);
+            if (i + 3 <= text.length()) {
+                post(seen, trigram(text, i), id);
+            }
+        }
+    }
+
+    private void post(Set<Long> seen, long gram, int id) {
+        if (!seen.add(gram)) {
+            return;
+        }
+        int[] list = postings.get(gram);
+        if (list == null) {
+            list = new int[]{0, 0, 0, 0};
+        }
+        if (list[0] + 1 == list.length) {
+            list = Arrays.copyOf(list, list.length * 2);
+        }
+        list[++list[0]] = id;  // Slot 0 holds the length
+        postings.put(gram, list);
+    }
+
+    public synchronized void addAll(Collection<String> newNames) {
+        for (String name : newNames) {
+            add(name);
+        }
+    }
+
+    public synchronized int size() {
+        return names.size();
+    }
+
+    // Edits tolerated for a folded query of this length
+    static int maxEdits(int length) {
+        if (length < 4) {
+            return 0;
+        }
+        return length < 7 ? 1 : length < 12 ? 2 : 3;
+    }
+
+    // Names matching the query within the tolerated edits, closest first, at most limit
+    public synchronized List<String> search(String query, int limit) {
+        String pattern = PrefixIndex.fold(query);
+        if (pattern.length() > MAX_QUERY_LENGTH) {
+            pattern = pattern.substring(0, MAX_QUERY_LENGTH);
+        }
+        if (pattern.length() < 2 || limit <= 0 || names.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        int edits = maxEdits(pattern.length());
+        Matches matches = new Matches(pattern, edits, Math.min(limit, names.size()));
+        searchEpoch++;
+
+        // Each edit breaks at most three trigrams, so a match keeps the rest
+        Set<Long> trigrams = new LinkedHashSet<>();
+        for (int i = 0; i + 3 <= pattern.length(); i++) {
+            trigrams.add(trigram(pattern, i));
+        }
+        int needed = trigrams.size() - 3 * edits;
+        if (needed >= 2) {
+            countTrigrams(trigrams, needed, matches);
+        } else {
+            searchPieces(pattern, edits, matches);
+        }
+        return matches.toList();
+    }
+
+    // Verify names holding at least needed of the pattern's trigrams
+    private void countTrigrams(Set<Long> trigrams, int needed, Matches matches) {
+        for (long trigram : trigrams) {
+            int[] list = postings.get(trigram);
+            if (list == null) {
+                continue;
+            }
+            for (int j = 1; j <= list[0]; j++) {
+                int id = list[j];
+                if (countStamp[id] != searchEpoch) {
+                    countStamp[id] = searchEpoch;
+                    counts[id] = 0;
+                }
+                if (++counts[id] == needed) {
+                    matches.offer(id);
+                }
+            }
+        }
+    }
+
+    // Verify the names holding any of edits + 1 non-overlapping bigrams or trigrams of the
+    // pattern, picked so their posting lists are as short as possible in total
+    private void searchPieces(String pattern, int edits, Matches matches) {
+        int m = pattern.length();
+        int pieces = edits + 1;
+
+        // best[j][i]: fewest postings for j grams inside pattern[0, i); width[j][i]: the width
+        // of the last gram if it ends at i, else 0
+        long[][] best = new long[pieces + 1][m + 1];
+        int[][] width = new int[pieces + 1][m + 1];
+        for (int j = 1; j <= pieces; j++) {
+            for (int i = 0; i <= m; i++) {
+                best[j][i] = i > 0 ? best[j][i - 1] : Long.MAX_VALUE;
+                for (int w = 2; w <= 3 && w <= i; w++) {
+                    if (best[j - 1][i - w] == Long.MAX_VALUE) {
+                        continue;
+                    }
+                    long cost = best[j - 1][i - w] + postingCount(gram(pattern, i - w, w));
+                    if (cost < best[j][i]) {
+                        best[j][i] = cost;
+                        width[j][i] = w;
+                    }
+                }
+            }
+        }
+
+        int i = m;
+        for (int j = pieces; j > 0; j--) {
+            while (width[j][i] == 0) {
+                i--;
+            }
+            int[] list = postings.get(gram(pattern, i - width[j][i], width[j][i]));
+            i -= width[j][i];
+            if (list == null) {
+                continue;  // No name holds this piece
+            }
+            for (int k = 1; k <= list[0]; k++) {
+                int id = list[k];
+                if (countStamp[id] != searchEpoch) {
+                    countStamp[id] = searchEpoch;
+                    matches.offer(id);
+                }
+            }
+        }
+    }
+
+    private int postingCount(long gram) {
+        int[] list = postings.get(gram);
+        return list == null ? 0 : list[0];
+    }
+
+    // The best matches so far, ranked by edit distance, then by how close the name's length is
+    // to the query's, then alphabetically; holds at most limit names
+    private final class Matches {
+        private final Myers matcher;
+        private final int queryLength;
+        private final int edits;
+        private final int[] ids;
+        private final int[] ranks;
+        private int count;
+
+        Matches(String pattern, int edits, int limit) {
+            this.matcher = new Myers(pattern);
+            this.queryLength = pattern.length();
+            this.edits = edits;
+            this.ids = new int[limit];
+            this.ranks = new int[limit];
+        }
+
+        // Verify a candidate and keep it if it ranks among the best
+        void offer(int id) {
+            int distance = matcher.bestDistance(chars, starts[id], starts[id + 1], edits);
+            if (distance > edits) {
+                return;
+            }
+            int rank = distance * 1024 + Math.min(1023, Math.abs(starts[id + 1] - starts[id] - queryLength));
+            int limit = ids.length;
+            if (count == limit && !ranksBefore(rank, id, count - 1)) {
+                return;
+            }
+
+            int position = Math.min(count, limit - 1);
+            while (position > 0 && ranksBefore(rank, id, position - 1)) {
+                position--;
+            }
+            int shifted = Math.min(count, limit - 1) - position;
+            System.arraycopy(ids, position, ids, position + 1, shifted);
+            System.arraycopy(ranks, position, ranks, position + 1, shifted);
+            ids[position] = id;
+            ranks[position] = rank;
+            count = Math.min(count + 1, limit);
+        }
+
+        private boolean ranksBefore(int rank, int id, int index) {
+            if (rank != ranks[index]) {
+                return rank < ranks[index];
+            }
+            return compareFolded(id, ids[index]) < 0;
+        }
+
+        List<String> toList() {
+            List<String> results = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                results.add(names.get(ids[i]));
+            }
+            return results;
+        }
+    }
+
+    // Alphabetical order of two names' folded text
+    private int compareFolded(int a, int b) {
+        int i = starts[a];
+        int j = starts[b];
+        while (i < starts[a + 1] && j < starts[b + 1]) {
+            if (chars[i] != chars[j]) {
+                return chars[i] - chars[j];
+            }
+            i++;
+            j++;
+        }
+        return (starts[a + 1] - i) - (starts[b + 1] - j);
+    }
+
+    private static long gram(String text, int i, int width) {
+        return width == 3 ? trigram(text, i) : bigram(text, i);
+    }
+
+    // Gram keys: the characters packed 16 bits each, bigrams with a marker bit above the 48
+    // bits a trigram uses, then multiplied by an odd constant. That keeps keys distinct but
+    // spreads them over the hash table; packed letters alone land in a few hundred buckets.
+    private static long bigram(String text, int i) {
+        return ((1L << 48) | ((long) text.charAt(i) << 16) | text.charAt(i + 1)) * 0x9E3779B97F4A7C15L;
+    }
+
+    private static long trigram(String text, int i) {
+        return (((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2))
+                * 0x9E3779B97F4A7C15L;
+    }
+
+    // Myers / Hyyro bit-vector algorithm for the smallest edit distance between the pattern and
+    // any substring of a text; one bit per pattern character, so patterns fit in a long
+    private static final class Myers {
+        private final int length;
+        private final long[] asciiMasks = new long[128];
+        private final Map<Character, Long> otherMasks = new HashMap<>();
+        private final long highBit;
+
+        Myers(String pattern) {
+            length = pattern.length();
+            highBit = 1L << (length - 1);
+            for (int i = 0; i < length; i++) {
+                char c = pattern.charAt(i);
+                if (c < 128) {
+                    asciiMasks[c] |= 1L << i;
+                } else {
+                    Long mask = otherMasks.get(c);
+                    otherMasks.put(c, (mask == null ? 0L : mask) | 1L << i);
+                }
+            }
+        }
+
+        private long mask(char c) {
+            if (c < 128) {
+                return asciiMasks[c];
+            }
+            Long mask = otherMasks.get(c);
+            return mask == null ? 0L : mask;
+        }
+
+        // Smallest distance, or anything above limit once it can no longer come down to limit
+        int bestDistance(char[] text, int from, int to, int limit) {
+            long positive = -1L;
+            long negative = 0L;
+            int score = length;
+            int best = length;
+
+            for (int i = from; i < to; i++) {
+                long equal = mask(text[i]);
+                long xv = equal | negative;
+                long xh = (((equal & positive) + positive) ^ positive) | equal;
+                long horizontalPositive = negative | ~(xh | positive);
+                long horizontalNegative = positive & xh;
+
+                if ((horizontalPositive & highBit) != 0) {
+                    score++;
+                } else if ((horizontalNegative & highBit) != 0) {
+                    score--;
+                }
+
+                // No carry into the first row: a match may start anywhere in the text
+                horizontalPositive <<= 1;
+                horizontalNegative <<= 1;
+                positive = horizontalNegative | ~(xv | horizontalPositive);
+                negative = horizontalPositive & xv;
+
+                if (score < best) {
+                    best = score;
+                }
+                // The score drops by at most one per remaining character
+                if (best > limit && score - (to - i - 1) > limit) {
+                    return best;
+                }
+            }
+            return best;
+        }
+    }
+}
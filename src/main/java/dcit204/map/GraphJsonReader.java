@@ -0,0 +1,344 @@
+package dcit204.map;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+// Streaming reader for the data.json graph format. The file is consumed token by token and
+// fed straight into a CampusGraph.Builder, so memory use is bounded by the graph itself
+// rather than by a parsed document tree.
+public class GraphJsonReader {
+    private final CountingInputStream counter;
+    private final Reader reader;
+    private final char[] buffer = new char[8192];
+    private int position;
+    private int limit;
+    private long charsConsumed;
+    private final StringBuilder scratch = new StringBuilder();
+
+    private int edgesRead;
+
+    public GraphJsonReader(InputStream in) {
+        this.counter = new CountingInputStream(in);
+        this.reader = new InputStreamReader(counter, StandardCharsets.UTF_8);
+    }
+
+    // Read the whole document into the builder and report how long it took
+    public LoadMetrics readInto(CampusGraph.Builder builder) throws IOException {
+        long startTime = System.nanoTime();
+        int nodesBefore = builder.nodeCount();
+
+        expect('{');
+        if (peek() == '}') {
+            next();
+        } else {
+            do {
+                String key = readString();
+                expect(':');
+
+                switch (key) {
+                    case "locations":
+                        readLocations(builder, false);
+                        break;
+                    case "landmarks":
+                        readLocations(builder, true);
+                        break;
+                    case "graph":
+                        readGraph(builder);
+                        break;
+                    case "coordinates":
+                        readCoordinates(builder);
+                        break;
+                    default:
+                        skipValue();
+                        break;
+                }
+            } while (nextSeparator('}'));
+        }
+
+        return new LoadMetrics(builder.nodeCount() - nodesBefore, edgesRead,
+                counter.getCount(), System.nanoTime() - startTime);
+    }
+
+    // "locations": ["A", "B", ...] or "landmarks": [...]
+    private void readLocations(CampusGraph.Builder builder, boolean landmarks) throws IOException {
+        expect('[');
+        if (peek() == ']') {
+            next();
+            return;
+        }
+
+        do {
+            String name = readString();
+            if (landmarks) {
+                builder.addLandmark(name);
+            } else {
+                builder.addLocation(name);
+            }
+        } while (nextSeparator(']'));
+    }
+
+    // "graph": { "A": { "B": 400.0, ... }, ... }
+    private void readGraph(CampusGraph.Builder builder) throws IOException {
+        expect('{');
+        if (peek() == '}') {
+            next();
+            return;
+        }
+
+        do {
+            int from = builder.addNode(readString());
+            expect(':');
+            expect('{');
+
+            if (peek() == '}') {
+                next();
+            } else {
+                do {
+                    int to = builder.addNode(readString());
+                    expect(':');
+                    builder.addEdge(from, to, readNumber());
+                    edgesRead++;
+                } while (nextSeparator('}'));
+            }
+        } while (nextSeparator('}'));
+    }
+
+    // "coordinates": { "A": [latitude, longitude], ... }
+    private void readCoordinates(CampusGraph.Builder builder) throws IOException {
+        expect('{');
+        if (peek() == '}') {
+            next();
+            return;
+        }
+
+        do {
+            String name = readString();
+            expect(':');
+            expect('[');
+            double latitude = readNumber();
+            expect(',');
+            double longitude = readNumber();
+            expect(']');
+            builder.setCoordinates(name, latitude, longitude);
+        } while (nextSeparator('}'));
+    }
+
+    // Skip over a value we don't care about (nested objects and arrays included)
+    private void skipValue() throws IOException {
+        char c = peek();
+
+        if (c == '"') {
+            readString();
+        } else if (c == '{' || c == '[') {
+            char close = c == '{' ? '}' : ']';
+            next();
+            if (peek() == close) {
+                next();
+                return;
+            }
+            do {
+                if (close == '}') {
+                    readString();
+                    expect(':');
+                }
+                skipValue();
+            } while (nextSeparator(close));
+        } else {
+            // Number, true, false or null
+            while (c != ',' && c != '}' && c != ']' && !Character.isWhitespace(c)) {
+                next();
+                c = peekRaw();
+            }
+        }
+    }
+
+    // Consume either a comma (more elements follow) or the closing bracket
+    private boolean nextSeparator(char close) throws IOException {
+        char c = next();
+        if (c == ',') {
+            return true;
+        }
+        if (c == close) {
+            return false;
+        }
+        throw error("Expected ',' or '" + close + "' but found '" + c + "'");
+    }
+
+    private String readString() throws IOException {
+        expect('"');
+        scratch.setLength(0);
+
+        while (true) {
+            char c = nextRaw();
+            if (c == '"') {
+                return scratch.toString();
+            }
+            if (c == '\\') {
+                char escaped = nextRaw();
+                switch (escaped) {
+                    case 'n': scratch.append('\n'); break;
+                    case 't': scratch.append('\t'); break;
+                    case 'r': scratch.append('\r'); break;
+                    case 'b': scratch.append('\b'); break;
+                    case 'f': scratch.append('\f'); break;
+                    case 'u':
+                        int code = 0;
+                        for (int i = 0; i < 4; i++) {
+                            int digit = Character.digit(nextRaw(), 16);
+                            if (digit < 0) {
+                                throw error("Invalid unicode escape");
+                            }
+                            code = code * 16 + digit;
+                        }
+                        scratch.append((char) code);
+                        break;
+                    default: scratch.append(escaped); break;
+                }
+            } else {
+                scratch.append(c);
+            }
+        }
+    }
+
+    private double readNumber() throws IOException {
+        peek();
+        scratch.setLength(0);
+
+        char c = peekRaw();
+        while ((c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E') {
+            scratch.append(nextRaw());
+            c = peekRaw();
+        }
+
+        try {
+            return Double.parseDouble(scratch.toString());
+        } catch (NumberFormatException e) {
+            throw error("Invalid number '" + scratch + "'");
+        }
+    }
+
+    private void expect(char expected) throws IOException {
+        char c = next();
+        if (c != expected) {
+            throw error("Expected '" + expected + "' but found '" + c + "'");
+        }
+    }
+
+    // Next non-whitespace character, consumed
+    private char next() throws IOException {
+        peek();
+        return nextRaw();
+    }
+
+    // Next non-whitespace character, not consumed
+    private char peek() throws IOException {
+        char c = peekRaw();
+        while (Character.isWhitespace(c)) {
+            nextRaw();
+            c = peekRaw();
+        }
+        return c;
+    }
+
+    private char nextRaw() throws IOException {
+        char c = peekRaw();
+        position++;
+        charsConsumed++;
+        return c;
+    }
+
+    private char peekRaw() throws IOException {
+        if (position == limit) {
+            limit = reader.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                throw error("Unexpected end of input");
+            }
+        }
+        return buffer[position];
+    }
+
+    private IOException error(String message) {
+        return new IOException("Malformed graph JSON at character " + charsConsumed + ": " + message);
+    }
+
+    // Timing and size figures for one load
+    public static class LoadMetrics {
+        private final int nodes;
+        private final int edges;
+        private final long bytesRead;
+        private final long elapsedNanos;
+
+        public LoadMetrics(int nodes, int edges, long bytesRead, long elapsedNanos) {
+            this.nodes = nodes;
+            this.edges = edges;
+            this.bytesRead = bytesRead;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public int getNodes() {
+            return nodes;
+        }
+
+        public int getEdges() {
+            return edges;
+        }
+
+        public long getBytesRead() {
+            return bytesRead;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public double getNodesPerSecond() {
+            return elapsedNanos == 0 ? 0 : nodes * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Loaded %d nodes and %d edges (%d bytes) in %.1f ms, %.0f nodes/sec",
+                    nodes, edges, bytesRead, elapsedNanos / 1e6, getNodesPerSecond());
+        }
+    }
+
+    // Counts the raw bytes pulled from the underlying stream
+    private static class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        long getCount() {
+            return count;
+        }
+    }
+}
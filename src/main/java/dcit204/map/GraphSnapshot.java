@@ -0,0 +1,187 @@
+package dcit204.map;
+
+import java.io.*;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+// Versioned binary snapshot of a CampusGraph.
+// Layout (big-endian): header, node flags, landmark ids, CSR offsets/targets/weights,
+// node latitudes/longitudes, then the node names as an offset table plus one UTF-8 blob.
+// The snapshot is opened with FileChannel.map and copied into the graph arrays in bulk,
+// so startup never touches individual nodes or edges the way the JSON parser does.
+public class GraphSnapshot {
+    private static final int MAGIC = 0x55474E47;  // "UGNG"
+    private static final int FORMAT_VERSION = 2;
+
+    // Magic, format version and source fingerprint
+    private static final int IDENTITY_BYTES = 16;
+
+    private GraphSnapshot() {
+    }
+
+    // Fingerprint of a source file, used to detect a stale snapshot
+    public static long fingerprint(Path source) throws IOException {
+        return Files.size(source) * 31 + Files.getLastModifiedTime(source).toMillis();
+    }
+
+    // Fingerprint of a classpath resource such as the bundled data.json
+    public static long fingerprint(URL source) throws IOException {
+        URLConnection connection = source.openConnection();
+        try {
+            return connection.getContentLengthLong() * 31 + connection.getLastModified();
+        } finally {
+            connection.getInputStream().close();
+        }
+    }
+
+    // Write a snapshot atomically, so a crash never leaves a half-written file behind
+    public static void write(CampusGraph graph, Path file, long sourceFingerprint) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+
+        Path temp = Files.createTempFile(directory, "graph", ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            int n = graph.nodeCount();
+            int[] landmarks = graph.landmarkIdArray();
+
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(sourceFingerprint);
+            out.writeInt(n);
+            out.writeInt(graph.edgeCount());
+            out.writeInt(landmarks.length);
+
+            for (int node = 0; node < n; node++) {
+                out.writeByte(graph.flagsOf(node));
+            }
+            for (int id : landmarks) {
+                out.writeInt(id);
+            }
+            for (int offset : graph.offsetArray()) {
+                out.writeInt(offset);
+            }
+            for (int target : graph.targetArray()) {
+                out.writeInt(target);
+            }
+            for (double weight : graph.weightArray()) {
+                out.writeDouble(weight);
+            }
+            for (double latitude : graph.latitudeArray()) {
+                out.writeDouble(latitude);
+            }
+            for (double longitude : graph.longitudeArray()) {
+                out.writeDouble(longitude);
+            }
+
+            byte[][] encoded = new byte[n][];
+            int blobSize = 0;
+            out.writeInt(0);
+            for (int node = 0; node < n; node++) {
+                encoded[node] = graph.nameOf(node).getBytes(StandardCharsets.UTF_8);
+                blobSize += encoded[node].length;
+                out.writeInt(blobSize);
+            }
+            for (byte[] name : encoded) {
+                out.write(name);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Open a snapshot, or return null if it is missing, from another format version or stale
+    public static CampusGraph read(Path file, long expectedFingerprint) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // Check the identity with a plain read first. A mapping stays open until it is
+            // garbage collected, and on Windows a mapped file can't be replaced, so mapping a
+            // stale snapshot would stop the fresh one from being written over it.
+            ByteBuffer identity = ByteBuffer.allocate(IDENTITY_BYTES);
+            int read = 0;
+            while (identity.hasRemaining() && read >= 0) {
+                read = channel.read(identity);
+            }
+            identity.flip();
+            if (identity.remaining() < IDENTITY_BYTES || identity.getInt() != MAGIC
+                    || identity.getInt() != FORMAT_VERSION || identity.getLong() != expectedFingerprint) {
+                return null;
+            }
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.position(IDENTITY_BYTES);
+
+            int n = buffer.getInt();
+            int edgeCount = buffer.getInt();
+            int landmarkCount = buffer.getInt();
+
+            byte[] flags = new byte[checkCount(buffer, n, 1)];
+            buffer.get(flags);
+
+            int[] landmarks = readInts(buffer, landmarkCount);
+            int[] offsets = readInts(buffer, n + 1);
+            int[] targets = readInts(buffer, edgeCount);
+
+            double[] weights = readDoubles(buffer, edgeCount);
+            double[] latitudes = readDoubles(buffer, n);
+            double[] longitudes = readDoubles(buffer, n);
+
+            int[] nameOffsets = readInts(buffer, n + 1);
+            int blobStart = buffer.position();
+            byte[] blob = new byte[checkCount(buffer, nameOffsets[n], 1)];
+            buffer.get(blob);
+
+            String[] names = new String[n];
+            for (int node = 0; node < n; node++) {
+                names[node] = new String(blob, nameOffsets[node],
+                        nameOffsets[node + 1] - nameOffsets[node], StandardCharsets.UTF_8);
+            }
+
+            if (blobStart + blob.length != channel.size()) {
+                return null;  // Trailing garbage, treat as corrupt
+            }
+
+            return CampusGraph.fromArrays(names, flags, landmarks, offsets, targets, weights,
+                    latitudes, longitudes);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            return null;  // Truncated or corrupt snapshot, rebuild from source
+        }
+    }
+
+    // The count itself if that many values of the given size fit in what is left of the file;
+    // a negative or oversized count means a corrupt header, not a huge allocation
+    private static int checkCount(ByteBuffer buffer, int count, int bytes) {
+        if (count < 0 || count > buffer.remaining() / bytes) {
+            throw new BufferUnderflowException();
+        }
+        return count;
+    }
+
+    private static int[] readInts(ByteBuffer buffer, int count) {
+        int[] values = new int[checkCount(buffer, count, Integer.BYTES)];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + count * Integer.BYTES);
+        return values;
+    }
+
+    private static double[] readDoubles(ByteBuffer buffer, int count) {
+        double[] values = new double[checkCount(buffer, count, Double.BYTES)];
+        buffer.asDoubleBuffer().get(values);
+        buffer.position(buffer.position() + count * Double.BYTES);
+        return values;
+    }
+}
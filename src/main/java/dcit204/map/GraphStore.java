@@ -0,0 +1,40 @@
+package dcit204.map;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+// Publishes immutable CampusGraph versions through an atomic reference.
+// Readers grab current() once per query and route against that snapshot without locking;
+// writers copy the current version into a builder, apply a batch of mutations and
+// compare-and-set the result, retrying the batch if another writer got there first.
+public class GraphStore {
+    private final AtomicReference<CampusGraph> current;
+
+    public GraphStore(CampusGraph initial) {
+        this.current = new AtomicReference<>(initial);
+    }
+
+    public CampusGraph current() {
+        return current.get();
+    }
+
+    // Replace the graph wholesale, e.g. after loading a new data file
+    public void publish(CampusGraph graph) {
+        current.set(graph);
+    }
+
+    // Apply a batch of mutations as one new version and return it.
+    // The mutation may run more than once under contention, so it must only touch the builder.
+    public CampusGraph update(Consumer<CampusGraph.Builder> mutation) {
+        while (true) {
+            CampusGraph base = current.get();
+            CampusGraph.Builder builder = new CampusGraph.Builder(base);
+            mutation.accept(builder);
+            CampusGraph next = builder.build();
+
+            if (current.compareAndSet(base, next)) {
+                return next;
+            }
+        }
+    }
+}
@@ -10,13 +10,16 @@ import javafx.scene.layout.HBox;
 import javafx.scene.layout.Priority;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
+import javafx.geometry.Side;
 import javafx.scene.input.KeyCode;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.SimpleDoubleProperty;
 import javafx.beans.property.SimpleIntegerProperty;
 
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 public class HelloController {
@@ -70,9 +73,13 @@ public class HelloController {
     private RadioButton optimalTimeRadio;
 
     private final DataLoader dataLoader = new DataLoader();
-    private final RouteFinder routeFinder = new RouteFinder();
+    // Route results and hot-origin trees share one memory budget
+    private final CacheBudget cacheBudget = new CacheBudget(CacheBudget.DEFAULT_MAX_BYTES);
+    private final RouteCache routeCache = new RouteCache(RouteCache.DEFAULT_MAX_ENTRIES, 0, cacheBudget);
+    private final ShortestPathTreeCache treeCache = new ShortestPathTreeCache(cacheBudget);
+    private final RouteFinder routeFinder = new RouteFinder(routeCache, treeCache);
     private final DistanceCalculator distanceCalculator = new DistanceCalculator();
-    private final SearchAndLandmarks searchAndLandmarks = new SearchAndLandmarks();
+    private final SearchAndLandmarks searchAndLandmarks = new SearchAndLandmarks(routeCache, treeCache);
     private final SortingAlgorithms sortingAlgorithms = new SortingAlgorithms();
     private final TrafficSimulator trafficSimulator = new TrafficSimulator();
 
@@ -143,42 +150,99 @@ public class HelloController {
         // Handler for start location
         startLocationComboBox.getEditor().setOnKeyPressed(event -> {
             if (event.getCode() == KeyCode.ENTER) {
-                String text = startLocationComboBox.getEditor().getText();
-                if (!text.isEmpty() && !startLocationComboBox.getItems().contains(text)) {
-                    startLocationComboBox.getItems().add(text);
-                    startLocationComboBox.setValue(text);
-                }
+                acceptTypedName(startLocationComboBox, name -> { });
             }
         });
 
         // Handler for destination
         destinationComboBox.getEditor().setOnKeyPressed(event -> {
             if (event.getCode() == KeyCode.ENTER) {
-                String text = destinationComboBox.getEditor().getText();
-                if (!text.isEmpty() && !destinationComboBox.getItems().contains(text)) {
-                    destinationComboBox.getItems().add(text);
-                    destinationComboBox.setValue(text);
-                }
+                acceptTypedName(destinationComboBox, name -> { });
             }
         });
 
         // Handler for landmark
         landmarkComboBox.getEditor().setOnKeyPressed(event -> {
             if (event.getCode() == KeyCode.ENTER) {
-                String text = landmarkComboBox.getEditor().getText();
-                if (!text.isEmpty() && !landmarkComboBox.getItems().contains(text)) {
-                    landmarkComboBox.getItems().add(text);
-                    landmarkComboBox.setValue(text);
-
+                acceptTypedName(landmarkComboBox, name -> {
                     // Auto-add to selected landmarks if the box is checked
-                    if (useLandmarkCheckBox.isSelected() && !selectedLandmarks.contains(text)) {
-                        selectedLandmarks.add(text);
+                    if (useLandmarkCheckBox.isSelected() && !selectedLandmarks.contains(name)) {
+                        selectedLandmarks.add(name);
                     }
-                }
+                });
             }
         });
     }
 
+    // Enter in an editable box: a name the text can only mean is filled in; otherwise the text
+    // is kept as a custom entry and any close known names are offered below the box to pick from
+    private void acceptTypedName(ComboBox<String> comboBox, Consumer<String> onAccept) {
+        String text = comboBox.getEditor().getText();
+        if (text.isEmpty() || comboBox.getItems().contains(text)) {
+            return;
+        }
+
+        List<String> known = new ArrayList<>(comboBox.getItems());
+        String name = resolveTypedName(text, known);
+        if (!name.equals(text)) {
+            comboBox.setValue(name);
+            statusLabel.setText("Showing results for " + name);
+            onAccept.accept(name);
+            return;
+        }
+
+        comboBox.getItems().add(text);
+        comboBox.setValue(text);
+        List<String> suggestions = suggestNames(text, known);
+        if (suggestions.isEmpty()) {
+            onAccept.accept(text);
+            return;
+        }
+
+        ContextMenu menu = new ContextMenu();
+        for (String suggestion : suggestions) {
+            MenuItem item = new MenuItem(suggestion);
+            item.setOnAction(event -> {
+                comboBox.setValue(suggestion);
+                onAccept.accept(suggestion);
+            });
+            menu.getItems().add(item);
+        }
+        menu.show(comboBox, Side.BOTTOM, 0, 0);
+        statusLabel.setText("Using \"" + text + "\"; pick a suggestion to use a known place instead");
+    }
+
+    // The known name typed text stands for: itself if known, or the one known name it is the
+    // start of; otherwise the text unchanged. Names that are merely close (a typo, or a different
+    // place such as "Legon Mall" for "Legon Hall") are only ever suggested, never substituted.
+    private String resolveTypedName(String text, List<String> known) {
+        if (known.contains(text)) {
+            return text;
+        }
+        String only = null;
+        for (String match : dataLoader.getPrefixIndex().search(text, PrefixIndex.MAX_RESULTS)) {
+            if (known.contains(match)) {
+                if (only != null) {
+                    return text;  // Ambiguous
+                }
+                only = match;
+            }
+        }
+        return only != null ? only : text;
+    }
+
+    // Known names close to the typed text, prefix matches before typo-tolerant ones
+    private List<String> suggestNames(String text, List<String> known) {
+        List<String> suggestions = new ArrayList<>();
+        for (String match : searchAndLandmarks.searchLocations(text,
+                dataLoader.getPrefixIndex(), dataLoader.getFuzzyIndex())) {
+            if (known.contains(match) && !match.equals(text)) {
+                suggestions.add(match);
+            }
+        }
+        return suggestions;
+    }
+
     private void setupLandmarkButtons() {
         addLandmarkButton.setOnAction(event -> {
             String selectedLandmark = landmarkComboBox.getValue();
@@ -254,13 +318,26 @@ public class HelloController {
         String start = startLocationComboBox.getValue();
         String destination = destinationComboBox.getValue();
 
-        // Check for custom locations and add them to the graph if needed
-        if (!dataLoader.getLocations().contains(start)) {
-            dataLoader.addCustomLocation(start);
+        // Complete names that can only mean one known location; add anything still unknown to
+        // the graph as custom
+        List<String> locations = dataLoader.getLocations();
+        List<String> completed = new ArrayList<>();
+        if (start != null && !locations.contains(start)) {
+            start = resolveTypedName(start, locations);
+            if (locations.contains(start)) {
+                completed.add(start);
+            } else {
+                dataLoader.addCustomLocation(start);
+            }
         }
 
-        if (!dataLoader.getLocations().contains(destination)) {
-            dataLoader.addCustomLocation(destination);
+        if (destination != null && !locations.contains(destination)) {
+            destination = resolveTypedName(destination, locations);
+            if (locations.contains(destination)) {
+                completed.add(destination);
+            } else {
+                dataLoader.addCustomLocation(destination);
+            }
         }
 
         if (start == null || destination == null) {
@@ -275,8 +352,15 @@ public class HelloController {
 
         statusLabel.setText("Finding routes from " + start + " to " + destination + "...");
 
+        // Places people route between rank higher in autocomplete
+        dataLoader.getPrefixIndex().recordSelection(start);
+        dataLoader.getPrefixIndex().recordSelection(destination);
+
         List<RouteOption> routes;
 
+        // Route against one immutable graph version for the whole query
+        CampusGraph graph = dataLoader.getCampusGraph();
+
         // Check if user wants to use landmarks
         if (useLandmarkCheckBox.isSelected() && !selectedLandmarks.isEmpty()) {
             // Find routes with required landmarks
@@ -284,15 +368,25 @@ public class HelloController {
                     start,
                     destination,
                     new ArrayList<>(selectedLandmarks),
-                    dataLoader.getGraph()
+                    graph
             );
         } else {
             // Find direct routes
-            routes = routeFinder.findRoutes(start, destination, dataLoader.getGraph());
+            routes = routeFinder.findRoutes(start, destination, graph);
         }
 
-        // Apply traffic simulation
-        routes = trafficSimulator.applyTrafficConditions(routes);
+        // Apply traffic for leaving now, edge by edge along each route
+        LocalDateTime departure = LocalDateTime.now();
+        routes = trafficSimulator.applyTrafficConditions(routes, graph, departure);
+
+        // When time matters, also offer the route that is fastest in current traffic
+        if (!shortestDistanceRadio.isSelected() && !useLandmarkCheckBox.isSelected()) {
+            RouteOption fastest = routeFinder.findFastestRoute(start, destination, graph,
+                    trafficSimulator.getProfiles(graph), departure);
+            if (fastest != null && !containsPath(routes, fastest.getPath())) {
+                routes.add(fastest);
+            }
+        }
 
         // Sort routes based on selected criteria
         if (shortestDistanceRadio.isSelected()) {
@@ -303,6 +397,10 @@ public class HelloController {
 
         // Update UI with routes
         displayRoutes(routes);
+        if (!completed.isEmpty()) {
+            statusLabel.setText("Showing results for " + String.join(" and ", completed) + ". "
+                    + statusLabel.getText());
+        }
 
         // Update table view if it exists
         if (routesTableView != null) {
@@ -315,6 +413,15 @@ public class HelloController {
         }
     }
 
+    private static boolean containsPath(List<RouteOption> routes, List<String> path) {
+        for (RouteOption route : routes) {
+            if (route.getPath().equals(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private void findRoutesByLandmark() {
         String landmark = landmarkComboBox.getValue();
 
@@ -322,13 +429,16 @@ public class HelloController {
             return;
         }
 
-        // Add to landmark list if it's custom
-        if (!dataLoader.getLandmarks().contains(landmark)) {
+        // Complete a name that can only mean one known landmark; add it to the landmark list if
+        // it's still custom
+        List<String> landmarks = dataLoader.getLandmarks();
+        landmark = resolveTypedName(landmark, landmarks);
+        if (!landmarks.contains(landmark)) {
             dataLoader.addCustomLandmark(landmark);
         }
 
         // Find routes that pass through this landmark
-        List<RouteOption> landmarkRoutes = searchAndLandmarks.findRoutesByLandmark(landmark, dataLoader.getGraph());
+        List<RouteOption> landmarkRoutes = searchAndLandmarks.findRoutesByLandmark(landmark, dataLoader.getCampusGraph());
 
         // Display landmark-based routes
         landmarkRoutesBox.getChildren().clear();
@@ -0,0 +1,134 @@
+package dcit204.map;
+
+import java.util.Arrays;
+
+// Indexed 4-ary min-heap over node ids with true decrease-key.
+// Each node is in the heap at most once, so the heap never holds more entries than the
+// search frontier. The heap arrays start small and grow with the frontier; only the
+// position table is sized to the graph, and it needs no initialisation pass because
+// 0 means "not in the heap" (positions are stored off by one).
+public class IndexedMinHeap {
+    private static final int ARITY = 4;
+
+    private int[] nodes = new int[16];
+    private double[] keys = new double[16];
+    private int size;
+    private final int[] positions;
+
+    public IndexedMinHeap(int nodeCount) {
+        this.positions = new int[nodeCount];
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(int node) {
+        return positions[node] != 0;
+    }
+
+    public double keyOf(int node) {
+        return keys[positions[node] - 1];
+    }
+
+    public double minKey() {
+        return keys[0];
+    }
+
+    public int peekMin() {
+        return nodes[0];
+    }
+
+    // Insert a node, or lower its key if it is already queued; returns false if the key didn't improve
+    public boolean insertOrDecrease(int node, double key) {
+        int position = positions[node] - 1;
+        if (position < 0) {
+            insert(node, key);
+            return true;
+        }
+        if (key < keys[position]) {
+            siftUp(position, node, key);
+            return true;
+        }
+        return false;
+    }
+
+    public void insert(int node, double key) {
+        if (size == nodes.length) {
+            int capacity = nodes.length * 2;
+            nodes = Arrays.copyOf(nodes, capacity);
+            keys = Arrays.copyOf(keys, capacity);
+        }
+        siftUp(size++, node, key);
+    }
+
+    public void decreaseKey(int node, double key) {
+        siftUp(positions[node] - 1, node, key);
+    }
+
+    // Remove and return the node with the smallest key
+    public int pollMin() {
+        int min = nodes[0];
+        positions[min] = 0;
+
+        size--;
+        if (size > 0) {
+            siftDown(0, nodes[size], keys[size]);
+        }
+        return min;
+    }
+
+    // Empty the heap in O(size) so it can be reused for another search
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            positions[nodes[i]] = 0;
+        }
+        size = 0;
+    }
+
+    private void siftUp(int position, int node, double key) {
+        while (position > 0) {
+            int parent = (position - 1) / ARITY;
+            if (keys[parent] <= key) {
+                break;
+            }
+            place(position, nodes[parent], keys[parent]);
+            position = parent;
+        }
+        place(position, node, key);
+    }
+
+    private void siftDown(int position, int node, double key) {
+        while (true) {
+            int first = position * ARITY + 1;
+            if (first >= size) {
+                break;
+            }
+
+            int best = first;
+            int last = Math.min(first + ARITY, size);
+            for (int child = first + 1; child < last; child++) {
+                if (keys[child] < keys[best]) {
+                    best = child;
+                }
+            }
+
+            if (keys[best] >= key) {
+                break;
+            }
+            place(position, nodes[best], keys[best]);
+            position = best;
+        }
+        place(position, node, key);
+    }
+
+    private void place(int position, int node, double key) {
+        nodes[position] = node;
+        keys[position] = key;
+        positions[node] = position + 1;
+    }
+}
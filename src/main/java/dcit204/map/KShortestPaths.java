@@ -0,0 +1,292 @@
+package dcit204.map;
+
+import java.util.*;
+
+// Yen's k-shortest loopless paths.
+// One backward shortest-path tree to the destination is built up front and reused for every
+// spur search: its distances are an exact (hence consistent) A* heuristic on the unmodified
+// graph, and a spur node whose tree path avoids the blocked nodes and edges needs no search
+// at all. Work is measured in settled nodes and can be capped; the paths returned are
+// always the true shortest ones, so running out of budget only means fewer paths.
+public class KShortestPaths {
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+
+    private final CampusGraph graph;
+
+    public KShortestPaths(CampusGraph graph) {
+        this.graph = graph;
+    }
+
+    // A loopless path and its length
+    public static class Path {
+        private final int[] nodes;
+        private final double distance;
+        private final int settledNodes;
+
+        Path(int[] nodes, double distance, int settledNodes) {
+            this.nodes = nodes;
+            this.distance = distance;
+            this.settledNodes = settledNodes;
+        }
+
+        public int[] getNodes() {
+            return nodes.clone();
+        }
+
+        public double getDistance() {
+            return distance;
+        }
+
+        // Nodes settled by the search that produced this path
+        public int getSettledNodes() {
+            return settledNodes;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Path && Arrays.equals(nodes, ((Path) o).nodes);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(nodes);
+        }
+    }
+
+    // Up to k shortest loopless paths from start to destination, shortest first
+    public List<Path> find(int start, int destination, int k, int maxSettledNodes) {
+        List<Path> accepted = new ArrayList<>();
+        if (k <= 0) {
+            return accepted;
+        }
+
+        // The tree and the spur searches run on this thread's pooled workspaces
+        SearchWorkspace treeSpace = SearchWorkspace.acquire(graph.nodeCount());
+        try {
+            ShortestPathTree toDestination = ShortestPathTree.backward(graph, destination,
+                    Double.POSITIVE_INFINITY, treeSpace);
+            if (!toDestination.isReachable(start)) {
+                return accepted;
+            }
+            SpurSearch search = new SpurSearch(graph, toDestination);
+            try {
+                searchSpurs(accepted, toDestination, search, start, destination, k, maxSettledNodes);
+            } finally {
+                search.release();
+            }
+            return accepted;
+        } finally {
+            treeSpace.release();
+        }
+    }
+
+    // Yen's main loop: add paths to accepted until there are k, no more exist or work runs out
+    private void searchSpurs(List<Path> accepted, ShortestPathTree toDestination, SpurSearch search,
+                             int start, int destination, int k, int maxSettledNodes) {
+        long work = toDestination.getSettledNodes();
+        accepted.add(new Path(toDestination.path(start), toDestination.distance(start), toDestination.getSettledNodes()));
+
+        // Candidates ordered by length, then by hop count so ties resolve the same way every time
+        PriorityQueue<Path> candidates = new PriorityQueue<>((a, b) -> {
+            int byDistance = Double.compare(a.distance, b.distance);
+            return byDistance != 0 ? byDistance : Integer.compare(a.nodes.length, b.nodes.length);
+        });
+        Set<Path> seen = new HashSet<>(accepted);
+
+        while (accepted.size() < k) {
+            int[] previous = accepted.get(accepted.size() - 1).nodes;
+            search.newRoot();
+            double rootDistance = 0;
+
+            for (int i = 0; i < previous.length - 1; i++) {
+                int spur = previous[i];
+
+                // Edges out of the spur node already used by accepted paths with this root
+                search.newSpur();
+                for (Path path : accepted) {
+                    if (path.nodes.length > i + 1 && sharesRoot(path.nodes, previous, i)) {
+                        search.blockEdgeTo(path.nodes[i + 1]);
+                    }
+                }
+
+                int[] spurPath = search.run(spur, destination, maxSettledNodes - work);
+                work += search.getSettled();
+                if (spurPath == null && work >= maxSettledNodes) {
+                    return;  // Out of budget; what we have is still exact
+                }
+
+                if (spurPath != null) {
+                    int[] nodes = new int[i + spurPath.length];
+                    System.arraycopy(previous, 0, nodes, 0, i);
+                    System.arraycopy(spurPath, 0, nodes, i, spurPath.length);
+
+                    Path candidate = new Path(nodes, rootDistance + search.getDistance(), search.getSettled());
+                    if (seen.add(candidate)) {
+                        candidates.add(candidate);
+                    }
+                }
+
+                // Grow the root path by one edge; its nodes may not be revisited by later spurs
+                search.blockNode(spur);
+                rootDistance += graph.edgeWeight(graph.findEdge(spur, previous[i + 1]));
+            }
+
+            if (candidates.isEmpty()) {
+                break;
+            }
+            accepted.add(candidates.poll());
+        }
+
+    }
+
+    // True if both paths start with the same nodes 0..last
+    private static boolean sharesRoot(int[] a, int[] b, int last) {
+        for (int i = 0; i <= last; i++) {
+            if (a[i] != b[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // A* from a spur node to the destination with some nodes and spur edges blocked.
+    // Search state lives in two pooled workspaces: one restarted for every spur search, and
+    // one whose marks are the blocked root-path nodes, restarted for every new root. Only a
+    // few edges out of a spur are ever blocked, so those are a short list.
+    private static class SpurSearch {
+        private final CampusGraph graph;
+        private final ShortestPathTree toDestination;
+        private final SearchWorkspace search;
+        private final SearchWorkspace blockedNodes;
+
+        private int[] blockedNext = new int[4];
+        private int blockedEdges;
+
+        private int settled;
+        private double distance;
+
+        SpurSearch(CampusGraph graph, ShortestPathTree toDestination) {
+            this.graph = graph;
+            this.toDestination = toDestination;
+            search = SearchWorkspace.acquire(graph.nodeCount());
+            blockedNodes = SearchWorkspace.acquire(graph.nodeCount());
+        }
+
+        void release() {
+            blockedNodes.release();
+            search.release();
+        }
+
+        void newRoot() {
+            blockedNodes.restart();
+        }
+
+        void newSpur() {
+            blockedEdges = 0;
+        }
+
+        void blockNode(int node) {
+            blockedNodes.mark(node);
+        }
+
+        void blockEdgeTo(int next) {
+            if (blockedEdges == blockedNext.length) {
+                blockedNext = Arrays.copyOf(blockedNext, blockedEdges * 2);
+            }
+            blockedNext[blockedEdges++] = next;
+        }
+
+        int getSettled() {
+            return settled;
+        }
+
+        double getDistance() {
+            return distance;
+        }
+
+        private boolean isBlocked(int node) {
+            return blockedNodes.isMarked(node);
+        }
+
+        private boolean isBlockedEdgeTo(int next) {
+            for (int i = 0; i < blockedEdges; i++) {
+                if (blockedNext[i] == next) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // Path from spur to destination (both included), or null if none within the budget
+        int[] run(int spur, int destination, long budget) {
+            settled = 0;
+
+            // The tree path is the shortest of all; use it if nothing on it is blocked
+            int[] treePath = toDestination.path(spur);
+            if (treePath != null && isUsable(treePath)) {
+                distance = toDestination.distance(spur);
+                return treePath;
+            }
+
+            search.restart();
+            IndexedMinHeap openSet = search.heap();
+            search.reach(spur, 0, CampusGraph.NO_NODE);
+            openSet.insert(spur, toDestination.distance(spur));
+
+            while (!openSet.isEmpty()) {
+                if (settled >= budget) {
+                    return null;
+                }
+                int current = openSet.pollMin();
+                search.settle(current);
+                settled++;
+
+                if (current == destination) {
+                    distance = search.distance(destination);
+                    return buildPath(destination);
+                }
+
+                for (int e = graph.firstEdge(current); e < graph.firstEdge(current + 1); e++) {
+                    int neighbor = graph.edgeTarget(e);
+                    if (search.isSettled(neighbor) || isBlocked(neighbor)
+                            || (current == spur && isBlockedEdgeTo(neighbor))
+                            || !toDestination.isReachable(neighbor)) {
+                        continue;
+                    }
+
+                    double tentative = search.distance(current) + graph.edgeWeight(e);
+                    if (!search.isReached(neighbor) || tentative < search.distance(neighbor)) {
+                        search.reach(neighbor, tentative, current);
+                        openSet.insertOrDecrease(neighbor, tentative + toDestination.distance(neighbor));
+                    }
+                }
+            }
+
+            return null;
+        }
+
+        private boolean isUsable(int[] path) {
+            if (path.length > 1 && isBlockedEdgeTo(path[1])) {
+                return false;
+            }
+            for (int i = 1; i < path.length; i++) {
+                if (isBlocked(path[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int[] buildPath(int destination) {
+            int length = 0;
+            for (int node = destination; node != CampusGraph.NO_NODE; node = search.parent(node)) {
+                length++;
+            }
+            int[] path = new int[length];
+            for (int node = destination, i = length - 1; node != CampusGraph.NO_NODE; node = search.parent(node), i--) {
+                path[i] = node;
+            }
+            return path;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package dcit204.map;
+
+import java.util.*;
+
+// ALT lower bounds (A*, Landmarks, Triangle inequality).
+// For every landmark L the exact distances d(L, v) and d(v, L) are precomputed, and by the
+// triangle inequality d(v, t) >= d(L, t) - d(L, v) and d(v, t) >= d(v, L) - d(t, L).
+// The bound needs no coordinates, so it stays useful where the straight-line heuristic is 0.
+//
+// Distances are stored as floats, node-major (all landmarks of one node are adjacent), so a
+// bound touches two short runs of memory and the tables take 8 bytes per node per landmark.
+public class LandmarkHeuristic {
+    public static final int DEFAULT_LANDMARK_COUNT = 8;
+
+    private final long graphVersion;
+    private final int[] landmarks;
+    private final int count;
+
+    // fromLandmark[node * count + i] = d(landmark i, node), toLandmark[...] = d(node, landmark i)
+    private final float[] fromLandmark;
+    private final float[] toLandmark;
+
+    // Subtracted from every bound so float rounding can never make it overestimate
+    private final double tolerance;
+
+    private LandmarkHeuristic(long graphVersion, int[] landmarks, float[] fromLandmark,
+                              float[] toLandmark, double tolerance) {
+        this.graphVersion = graphVersion;
+        this.landmarks = landmarks;
+        this.count = landmarks.length;
+        this.fromLandmark = fromLandmark;
+        this.toLandmark = toLandmark;
+        this.tolerance = tolerance;
+    }
+
+    public long getGraphVersion() {
+        return graphVersion;
+    }
+
+    // Node ids of the chosen landmarks, in selection order
+    public int[] getLandmarks() {
+        return landmarks.clone();
+    }
+
+    // Select up to count landmarks and precompute their distance tables.
+    // The curated landmarks of the graph seed the selection; further landmarks are picked
+    // farthest-first, i.e. the node whose distance to every landmark chosen so far is largest.
+    public static LandmarkHeuristic build(CampusGraph graph, int count) {
+        int n = graph.nodeCount();
+        count = Math.min(count, n);
+
+        int[] chosen = new int[count];
+        List<ShortestPathTree> forwardTrees = new ArrayList<>();
+        List<ShortestPathTree> backwardTrees = new ArrayList<>();
+
+        // Distance from the nearest chosen landmark to each node; infinite until covered
+        double[] coverage = new double[n];
+        Arrays.fill(coverage, Double.POSITIVE_INFINITY);
+
+        int[] seeds = graph.landmarkIdArray();
+        for (int i = 0; i < count; i++) {
+            int next;
+            if (i == 0) {
+                next = seeds.length > 0 ? seeds[0] : farthestFrom(ShortestPathTree.forward(graph, 0));
+            } else {
+                next = farthest(coverage, seeds);
+            }
+            chosen[i] = next;
+
+            ShortestPathTree forward = ShortestPathTree.forward(graph, next);
+            forwardTrees.add(forward);
+            backwardTrees.add(ShortestPathTree.backward(graph, next));
+            for (int node = 0; node < n; node++) {
+                coverage[node] = Math.min(coverage[node], forward.distance(node));
+            }
+        }
+
+        float[] fromLandmark = new float[n * count];
+        float[] toLandmark = new float[n * count];
+        double maxDistance = 0;
+        for (int i = 0; i < count; i++) {
+            ShortestPathTree forward = forwardTrees.get(i);
+            ShortestPathTree backward = backwardTrees.get(i);
+            for (int node = 0; node < n; node++) {
+                fromLandmark[node * count + i] = (float) forward.distance(node);
+                toLandmark[node * count + i] = (float) backward.distance(node);
+                if (forward.isReachable(node)) {
+                    maxDistance = Math.max(maxDistance, forward.distance(node));
+                }
+                if (backward.isReachable(node)) {
+                    maxDistance = Math.max(maxDistance, backward.distance(node));
+                }
+            }
+        }
+
+        // Each stored value is off by at most half an ulp, and a bound is a difference of two
+        double tolerance = 2 * Math.ulp((float) maxDistance);
+        return new LandmarkHeuristic(graph.getVersion(), chosen, fromLandmark, toLandmark, tolerance);
+    }
+
+    // Unchosen seed with the largest coverage distance, or any node once the seeds are used up
+    private static int farthest(double[] coverage, int[] seeds) {
+        int best = CampusGraph.NO_NODE;
+        for (int seed : seeds) {
+            if (coverage[seed] > 0 && (best == CampusGraph.NO_NODE || coverage[seed] > coverage[best])) {
+                best = seed;
+            }
+        }
+        if (best != CampusGraph.NO_NODE) {
+            return best;
+        }
+
+        best = 0;
+        for (int node = 1; node < coverage.length; node++) {
+            if (coverage[node] > coverage[best]) {
+                best = node;
+            }
+        }
+        return best;
+    }
+
+    private static int farthestFrom(ShortestPathTree tree) {
+        int best = tree.getRoot();
+        for (int node = 0; node < tree.nodeCount(); node++) {
+            if (tree.isReachable(node) && tree.distance(node) > tree.distance(best)) {
+                best = node;
+            }
+        }
+        return best;
+    }
+
+    // Lower bound on d(node, target); 0 when no landmark gives information
+    public double lowerBound(int node, int target) {
+        int nodeBase = node * count;
+        int targetBase = target * count;
+        float best = 0;
+
+        for (int i = 0; i < count; i++) {
+            float fromToTarget = fromLandmark[targetBase + i];
+            float fromToNode = fromLandmark[nodeBase + i];
+            float nodeToLandmark = toLandmark[nodeBase + i];
+            float targetToLandmark = toLandmark[targetBase + i];
+
+            // Skip a side when either distance is infinite (different components)
+            if (fromToTarget != Float.POSITIVE_INFINITY && fromToNode != Float.POSITIVE_INFINITY) {
+                best = Math.max(best, fromToTarget - fromToNode);
+            }
+            if (nodeToLandmark != Float.POSITIVE_INFINITY && targetToLandmark != Float.POSITIVE_INFINITY) {
+                best = Math.max(best, nodeToLandmark - targetToLandmark);
+            }
+        }
+
+        return Math.max(0, best - tolerance);
+    }
+}
@@ -0,0 +1,227 @@
+package dcit204.map;
+
+import java.util.*;
+
+// Case-folded prefix index over place names and their aliases, for autocomplete.
+// Keys live in a compact trie: nodes are rows of parallel int/char arrays linked
+// first-child / next-sibling, with siblings kept in character order. Besides the full
+// name, every later word of a name is a key too, so "lib" finds "Balme Library".
+//
+// Every trie node also stores the best MAX_RESULTS names below it, ranked by popularity
+// (then alphabetically), so a lookup walks the prefix and copies that list out: the cost
+// depends on the prefix length, not on how many names match. Adding a name or alias, or
+// recording a selection, updates those lists along the affected paths only.
+public class PrefixIndex {
+    public static final int MAX_RESULTS = 10;
+
+    // Trie rows
+    private char[] labels = new char[64];
+    private int[] firstChild = new int[64];
+    private int[] nextSibling = new int[64];
+    private int[] top = new int[64 * MAX_RESULTS];
+    private byte[] topCount = new byte[64];
+    private int nodeCount;
+
+    // Names by id, their popularity and every key that leads to them
+    private final List<String> names = new ArrayList<>();
+    private final List<List<String>> keysOf = new ArrayList<>();
+    private final Map<String, Integer> ids = new HashMap<>();
+    private long[] popularity = new long[16];
+
+    public PrefixIndex() {
+        newNode('\0');  // Root
+    }
+
+    // Lower-cased, with runs of whitespace collapsed to one space
+    static String fold(String text) {
+        StringBuilder folded = new StringBuilder(text.length());
+        boolean space = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = Character.toLowerCase(text.charAt(i));
+            if (Character.isWhitespace(c)) {
+                space = folded.length() > 0;
+                continue;
+            }
+            if (space) {
+                folded.append(' ');
+                space = false;
+            }
+            folded.append(c);
+        }
+        return folded.toString();
+    }
+
+    // Add a name (no-op if already present), searchable by its full text and each later word
+    public synchronized void add(String name) {
+        if (name == null || ids.containsKey(name)) {
+            return;
+        }
+        int id = names.size();
+        names.add(name);
+        keysOf.add(new ArrayList<>());
+        ids.put(name, id);
+        if (id == popularity.length) {
+            popularity = Arrays.copyOf(popularity, id * 2);
+        }
+
+        String folded = fold(name);
+        addKey(id, folded);
+        for (int i = folded.indexOf(' '); i >= 0; i = folded.indexOf(' ', i + 1)) {
+            addKey(id, folded.substring(i + 1));
+        }
+    }
+
+    public synchronized void addAll(Collection<String> newNames) {
+        for (String name : newNames) {
+            add(name);
+        }
+    }
+
+    // Make name findable under another spelling, e.g. an abbreviation; adds the name if needed
+    public synchronized void addAlias(String alias, String name) {
+        add(name);
+        addKey(ids.get(name), fold(alias));
+    }
+
+    // Count one more use of name, moving it up in the suggestions for its prefixes
+    public synchronized void recordSelection(String name) {
+        Integer id = ids.get(name);
+        if (id == null) {
+            return;
+        }
+        popularity[id]++;
+        for (String key : keysOf.get(id)) {
+            int node = 0;
+            rank(node, id);
+            for (int i = 0; i < key.length(); i++) {
+                node = child(node, key.charAt(i));
+                rank(node, id);
+            }
+        }
+    }
+
+    // The best matches for a prefix, at most limit (capped at MAX_RESULTS)
+    public synchronized List<String> search(String prefix, int limit) {
+        String folded = fold(prefix);
+        int node = 0;
+        for (int i = 0; i < folded.length() && node >= 0; i++) {
+            node = child(node, folded.charAt(i));
+        }
+
+        List<String> results = new ArrayList<>();
+        if (node < 0) {
+            return results;
+        }
+        int count = Math.min(limit, topCount[node]);
+        for (int i = 0; i < count; i++) {
+            results.add(names.get(top[node * MAX_RESULTS + i]));
+        }
+        return results;
+    }
+
+    public synchronized boolean contains(String name) {
+        return ids.containsKey(name);
+    }
+
+    public synchronized int size() {
+        return names.size();
+    }
+
+    private void addKey(int id, String key) {
+        List<String> keys = keysOf.get(id);
+        if (key.isEmpty() || keys.contains(key)) {
+            return;
+        }
+        keys.add(key);
+
+        int node = 0;
+        rank(node, id);
+        for (int i = 0; i < key.length(); i++) {
+            int next = child(node, key.charAt(i));
+            if (next < 0) {
+                next = insertChild(node, key.charAt(i));
+            }
+            node = next;
+            rank(node, id);
+        }
+    }
+
+    // Child of node labelled c, or -1
+    private int child(int node, char c) {
+        for (int n = firstChild[node]; n >= 0 && labels[n] <= c; n = nextSibling[n]) {
+            if (labels[n] == c) {
+                return n;
+            }
+        }
+        return -1;
+    }
+
+    // New child of node labelled c, linked in character order
+    private int insertChild(int node, char c) {
+        int created = newNode(c);
+        int before = -1;
+        int n = firstChild[node];
+        while (n >= 0 && labels[n] < c) {
+            before = n;
+            n = nextSibling[n];
+        }
+        nextSibling[created] = n;
+        if (before < 0) {
+            firstChild[node] = created;
+        } else {
+            nextSibling[before] = created;
+        }
+        return created;
+    }
+
+    private int newNode(char label) {
+        if (nodeCount == labels.length) {
+            int capacity = nodeCount * 2;
+            labels = Arrays.copyOf(labels, capacity);
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            nextSibling = Arrays.copyOf(nextSibling, capacity);
+            top = Arrays.copyOf(top, capacity * MAX_RESULTS);
+            topCount = Arrays.copyOf(topCount, capacity);
+        }
+        int node = nodeCount++;
+        labels[node] = label;
+        firstChild[node] = -1;
+        nextSibling[node] = -1;
+        return node;
+    }
+
+    // Put id in its ranked place in the node's top list, or drop it off the end
+    private void rank(int node, int id) {
+        int base = node * MAX_RESULTS;
+        int count = topCount[node];
+
+        // Take it out first if it's already listed
+        for (int i = 0; i < count; i++) {
+            if (top[base + i] == id) {
+                System.arraycopy(top, base + i + 1, top, base + i, count - i - 1);
+                count--;
+                break;
+            }
+        }
+
+        int position = count;
+        while (position > 0 && ranksBefore(id, top[base + position - 1])) {
+            position--;
+        }
+        if (position >= MAX_RESULTS) {
+            topCount[node] = (byte) count;
+            return;
+        }
+        int shifted = Math.min(count, MAX_RESULTS - 1) - position;
+        System.arraycopy(top, base + position, top, base + position + 1, shifted);
+        top[base + position] = id;
+        topCount[node] = (byte) Math.min(count + 1, MAX_RESULTS);
+    }
+
+    private boolean ranksBefore(int a, int b) {
+        if (popularity[a] != popularity[b]) {
+            return popularity[a] > popularity[b];
+        }
+        return names.get(a).compareToIgnoreCase(names.get(b)) < 0;
+    }
+}
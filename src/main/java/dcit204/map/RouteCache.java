@@ -0,0 +1,249 @@
+package dcit204.map;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+// Bounded LRU cache of route query results, shared by RouteFinder and SearchAndLandmarks.
+// Keys include the graph version, and as soon as a newer version is seen every older entry
+// is dropped, so a cached route can never describe a graph that has since been edited.
+// Entries can optionally expire after a time-to-live as well. With a CacheBudget the entries
+// are also charged against a memory budget shared with other routing caches.
+//
+// All map access is under one lock (the budget's, if there is one); routes are computed
+// outside it, so two threads missing on the same key may both compute it, and the later wins.
+public class RouteCache implements CacheBudget.Owner {
+    public static final int DEFAULT_MAX_ENTRIES = 512;
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final CacheBudget budget;
+    private final Object lock;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long latestVersion = Long.MIN_VALUE;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public RouteCache(int maxEntries) {
+        this(maxEntries, 0);
+    }
+
+    // ttlMillis of 0 keeps entries until they are evicted or invalidated
+    public RouteCache(int maxEntries, long ttlMillis) {
+        this(maxEntries, ttlMillis, null);
+    }
+
+    // budget may be null for a cache bounded only by its entry count
+    public RouteCache(int maxEntries, long ttlMillis, CacheBudget budget) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttlMillis * 1_000_000L;
+        this.budget = budget;
+        this.lock = budget != null ? budget : this;
+    }
+
+    // Cache key: the query's endpoints, what kind of query it was, and the graph version
+    public static final class Key {
+        private final String start;
+        private final String destination;
+        private final String kind;
+        private final List<String> via;
+        private final long graphVersion;
+
+        private Key(String start, String destination, String kind, List<String> via, long graphVersion) {
+            this.start = start;
+            this.destination = destination;
+            this.kind = kind;
+            this.via = via;
+            this.graphVersion = graphVersion;
+        }
+
+        // Key for RouteFinder.findRoutes with a given search mode
+        public static Key routes(String start, String destination, SearchMode mode, long graphVersion) {
+            return new Key(start, destination, mode.name(), Collections.<String>emptyList(), graphVersion);
+        }
+
+        // Key for a route that must pass through the given landmarks
+        public static Key viaLandmarks(String start, String destination, List<String> landmarks, long graphVersion) {
+            return new Key(start, destination, "LANDMARKS",
+                    Collections.unmodifiableList(new ArrayList<>(landmarks)), graphVersion);
+        }
+
+        public long getGraphVersion() {
+            return graphVersion;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return graphVersion == other.graphVersion && start.equals(other.start)
+                    && destination.equals(other.destination) && kind.equals(other.kind)
+                    && via.equals(other.via);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(start, destination, kind, via, graphVersion);
+        }
+    }
+
+    private static final class Entry {
+        final List<RouteOption> routes;
+        final long createdAt;
+        CacheBudget.Charge charge;
+
+        Entry(List<RouteOption> routes, long createdAt) {
+            this.routes = routes;
+            this.createdAt = createdAt;
+        }
+    }
+
+    // Cached routes for the key, or compute, store and return them
+    public List<RouteOption> getOrCompute(Key key, Supplier<List<RouteOption>> compute) {
+        List<RouteOption> cached = get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        List<RouteOption> routes = compute.get();
+        put(key, routes);
+        return new ArrayList<>(routes);
+    }
+
+    // Cached routes (a fresh copy the caller may modify), or null on a miss
+    public List<RouteOption> get(Key key) {
+        synchronized (lock) {
+            observeVersion(key.graphVersion);
+
+            Entry entry = entries.get(key);
+            if (entry != null && isExpired(entry)) {
+                drop(entries.remove(key));
+                invalidations.incrementAndGet();
+                entry = null;
+            }
+
+            if (entry == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+            hits.incrementAndGet();
+            if (entry.charge != null) {
+                budget.touch(entry.charge);
+            }
+            return new ArrayList<>(entry.routes);
+        }
+    }
+
+    public void put(Key key, List<RouteOption> routes) {
+        synchronized (lock) {
+            observeVersion(key.graphVersion);
+            if (key.graphVersion < latestVersion) {
+                return;  // Computed against a graph that has already been replaced
+            }
+
+            Entry entry = new Entry(Collections.unmodifiableList(new ArrayList<>(routes)), System.nanoTime());
+            drop(entries.put(key, entry));
+
+            Iterator<Entry> eldest = entries.values().iterator();
+            while (entries.size() > maxEntries) {
+                drop(eldest.next());
+                eldest.remove();
+                evictions.incrementAndGet();
+            }
+
+            if (budget != null) {
+                entry.charge = budget.charge(this, key, estimateBytes(routes));
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (lock) {
+            invalidations.addAndGet(entries.size());
+            for (Entry entry : entries.values()) {
+                drop(entry);
+            }
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (lock) {
+            return entries.size();
+        }
+    }
+
+    // Called by the shared budget when it evicts one of our entries
+    @Override
+    public void evicted(Object key) {
+        if (entries.remove(key) != null) {
+            evictions.incrementAndGet();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    // Entries dropped because the graph changed or their time-to-live ran out
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    public double getHitRate() {
+        long total = hits.get() + misses.get();
+        return total == 0 ? 0 : (double) hits.get() / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RouteCache[size=%d, hits=%d, misses=%d, evictions=%d, invalidations=%d, hit rate=%.1f%%]",
+                size(), getHits(), getMisses(), getEvictions(), getInvalidations(), getHitRate() * 100);
+    }
+
+    // Drop everything cached for older graph versions once a newer one shows up
+    private void observeVersion(long graphVersion) {
+        if (graphVersion > latestVersion) {
+            if (!entries.isEmpty()) {
+                clear();
+            }
+            latestVersion = graphVersion;
+        }
+    }
+
+    // Return a removed entry's share of the budget
+    private void drop(Entry entry) {
+        if (entry != null && entry.charge != null) {
+            budget.release(entry.charge);
+        }
+    }
+
+    // Rough heap footprint of a cached route list
+    private static long estimateBytes(List<RouteOption> routes) {
+        long bytes = 128;
+        for (RouteOption route : routes) {
+            bytes += 96 + 16L * (route.getPath().size() + route.getLandmarks().size());
+        }
+        return bytes;
+    }
+
+    private boolean isExpired(Entry entry) {
+        return ttlNanos > 0 && System.nanoTime() - entry.createdAt > ttlNanos;
+    }
+}
@@ -1,231 +1,558 @@
 package dcit204.map;
 
+import java.time.LocalDateTime;
 import java.util.*;
 
 public class RouteFinder {
     private final DistanceCalculator distanceCalculator = new DistanceCalculator();
 
+    // Number of alternatives added by findRoutes
+    private static final int DEFAULT_ALTERNATIVES = 2;
+
+    private volatile int alternativeCount = DEFAULT_ALTERNATIVES;
+    private volatile double maxOverlap = AlternativeRoutes.DEFAULT_MAX_OVERLAP;
+
+    // Optional result cache; null computes every query
+    private final RouteCache routeCache;
+
+    // Optional trees for hot origins; the shortest route from a cached tree needs no search
+    private final ShortestPathTreeCache treeCache;
+
+    // Hierarchy for SearchMode.CONTRACTION_HIERARCHY; rebuilt when the graph version moves on
+    private volatile ContractionHierarchy hierarchy;
+
+    // Landmark distance tables for SearchMode.ALT, also tied to one graph version
+    private volatile LandmarkHeuristic landmarkHeuristic;
+
+    public RouteFinder() {
+        this(null);
+    }
+
+    public RouteFinder(RouteCache routeCache) {
+        this(routeCache, null);
+    }
+
+    public RouteFinder(RouteCache routeCache, ShortestPathTreeCache treeCache) {
+        this.routeCache = routeCache;
+        this.treeCache = treeCache;
+    }
+
     // Find routes from start to destination using Dijkstra's algorithm
     public List<RouteOption> findRoutes(String start, String destination, Map<String, Map<String, Double>> graph) {
+        return findRoutes(start, destination, CampusGraph.fromMap(graph));
+    }
+
+    // Find routes from start to destination on the compact graph
+    public List<RouteOption> findRoutes(String start, String destination, CampusGraph graph) {
+        // With an admissible heuristic A* matches Dijkstra's result while settling fewer nodes
+        return findRoutes(start, destination, graph, SearchMode.A_STAR);
+    }
+
+    // Find routes using the given algorithm for the shortest route. With alternatives (the
+    // default) the shortest route comes from the alternative search's trees instead, and the
+    // algorithm is only used once setAlternativeCount(0) turns them off.
+    public List<RouteOption> findRoutes(String start, String destination, CampusGraph graph, SearchMode mode) {
+        // A legacy map graph is built for this call alone; caching its routes would only flush
+        // the entries of the shared graph
+        if (routeCache == null || graph.isDetached()) {
+            return computeRoutes(start, destination, graph, mode);
+        }
+        return routeCache.getOrCompute(RouteCache.Key.routes(start, destination, mode, graph.getVersion()),
+                () -> computeRoutes(start, destination, graph, mode));
+    }
+
+    private List<RouteOption> computeRoutes(String start, String destination, CampusGraph graph, SearchMode mode) {
         List<RouteOption> routes = new ArrayList<>();
 
-        // Find the shortest path using Dijkstra's algorithm
-        RouteOption shortestRoute = dijkstraAlgorithm(graph, start, destination);
+        int source = graph.idOf(start);
+        int target = graph.idOf(destination);
+        if (source == CampusGraph.NO_NODE || target == CampusGraph.NO_NODE) {
+            return routes;
+        }
+
+        ShortestPathTree tree = treeCache == null ? null : treeCache.get(graph, source);
+        int alternatives = alternativeCount;
+        if (alternatives > 0) {
+            // The shortest route and its alternatives (plateau method) all come from the same two
+            // trees; a cached tree for a hot source stands in for the forward one
+            AlternativeRoutes search = new AlternativeRoutes(graph, maxOverlap, AlternativeRoutes.DEFAULT_MAX_STRETCH);
+            for (KShortestPaths.Path path : search.findWithShortest(source, target, alternatives, tree)) {
+                routes.add(toRoute(graph, path));
+            }
+            return routes;
+        }
+
+        RouteOption shortestRoute = tree != null
+                ? treeRoute(graph, tree, target)
+                : findShortestRoute(graph, source, target, mode);
         if (shortestRoute != null) {
             routes.add(shortestRoute);
         }
+        return routes;
+    }
 
-        // Find alternative routes using A* algorithm
-        RouteOption aStarRoute = aStarAlgorithm(graph, start, destination);
-        if (aStarRoute != null && !routes.contains(aStarRoute)) {
-            routes.add(aStarRoute);
+    // Run a single shortest-path query with the chosen algorithm
+    RouteOption findShortestRoute(CampusGraph graph, int start, int destination, SearchMode mode) {
+        switch (mode) {
+            case DIJKSTRA:
+                return dijkstraAlgorithm(graph, start, destination);
+            case BIDIRECTIONAL_DIJKSTRA:
+                return bidirectionalSearch(graph, start, destination, false);
+            case BIDIRECTIONAL_A_STAR:
+                return bidirectionalSearch(graph, start, destination, true);
+            case CONTRACTION_HIERARCHY:
+                return hierarchySearch(graph, start, destination);
+            case ALT:
+                return aStarAlgorithm(graph, start, destination, getLandmarkHeuristic(graph));
+            case A_STAR:
+            default:
+                return aStarAlgorithm(graph, start, destination, null);
         }
+    }
 
-        // Add alternative routes (possibly longer but with other advantages)
-        addAlternativeRoutes(routes, graph, start, destination);
+    // Fastest route when leaving at departure, with each edge's travel time taken from the
+    // profiles at the moment it is entered. The route's time is the traffic-aware walking
+    // time in minutes; its distance is still the length of the path.
+    public RouteOption findFastestRoute(String start, String destination, CampusGraph graph,
+                                        TravelTimeProfiles profiles, LocalDateTime departure) {
+        int source = graph.idOf(start);
+        int target = graph.idOf(destination);
+        if (source == CampusGraph.NO_NODE || target == CampusGraph.NO_NODE) {
+            return null;
+        }
+        if (profiles.getGraphVersion() != graph.getVersion()) {
+            throw new IllegalArgumentException("Travel time profiles belong to a different graph version");
+        }
+        return timeDependentSearch(graph, source, target, profiles, TravelTimeProfiles.minuteOfWeek(departure));
+    }
 
-        return routes;
+    // Time-dependent Dijkstra: labels are arrival times (minutes after departure), and an edge
+    // is costed at the arrival time of its tail. With FIFO profiles the first time a node is
+    // settled is its earliest arrival, just as in the static case.
+    private RouteOption timeDependentSearch(CampusGraph graph, int start, int destination,
+                                            TravelTimeProfiles profiles, double departure) {
+        SearchWorkspace search = SearchWorkspace.acquire(graph.nodeCount());
+        try {
+            IndexedMinHeap queue = search.heap();
+            search.reach(start, 0.0, CampusGraph.NO_NODE);
+            queue.insert(start, 0.0);
+            int settled = 0;
+
+            while (!queue.isEmpty()) {
+                int current = queue.pollMin();
+                search.settle(current);
+                settled++;
+
+                if (current == destination) {
+                    return timedRoute(graph, search, destination, settled);
+                }
+
+                double clock = departure + search.distance(current);
+                for (int e = graph.firstEdge(current); e < graph.firstEdge(current + 1); e++) {
+                    int neighbor = graph.edgeTarget(e);
+                    if (search.isSettled(neighbor)) {
+                        continue;
+                    }
+
+                    double arrival = search.distance(current) + profiles.travelTime(graph, e, clock);
+                    if (!search.isReached(neighbor) || arrival < search.distance(neighbor)) {
+                        search.reach(neighbor, arrival, current);
+                        queue.insertOrDecrease(neighbor, arrival);
+                    }
+                }
+            }
+
+            return null;  // No path found
+        } finally {
+            search.release();
+        }
     }
 
-    // Dijkstra's algorithm for finding shortest path
-    private RouteOption dijkstraAlgorithm(Map<String, Map<String, Double>> graph, String start, String destination) {
-        // Priority queue for processing vertices
-        PriorityQueue<Node> priorityQueue = new PriorityQueue<>(Comparator.comparingDouble(node -> node.distance));
-
-        // Distance map
-        Map<String, Double> distances = new HashMap<>();
-
-        // Previous node map for path reconstruction
-        Map<String, String> previous = new HashMap<>();
-
-        // Initialize
-        for (String vertex : graph.keySet()) {
-            if (vertex.equals(start)) {
-                distances.put(vertex, 0.0);
-                priorityQueue.add(new Node(vertex, 0.0));
-            } else {
-                distances.put(vertex, Double.MAX_VALUE);
-                priorityQueue.add(new Node(vertex, Double.MAX_VALUE));
+    private RouteOption timedRoute(CampusGraph graph, SearchWorkspace search, int destination, int settled) {
+        List<String> path = new ArrayList<>();
+        double distance = 0;
+        for (int node = destination; node != CampusGraph.NO_NODE; node = search.parent(node)) {
+            path.add(graph.nameOf(node));
+            if (search.parent(node) != CampusGraph.NO_NODE) {
+                distance += graph.edgeWeight(graph.findEdge(search.parent(node), node));
             }
-            previous.put(vertex, null);
         }
+        Collections.reverse(path);
 
-        // Process vertices
-        while (!priorityQueue.isEmpty()) {
-            Node current = priorityQueue.poll();
+        int time = (int) Math.ceil(search.distance(destination));
+        return new RouteOption(path, distance, time, identifyLandmarks(path), graph.getVersion(), settled);
+    }
 
-            if (current.name.equals(destination)) {
-                // Found destination, reconstruct path
-                return constructRoute(previous, distances, start, destination);
+    // Install a prebuilt (e.g. loaded from disk) hierarchy
+    public void setContractionHierarchy(ContractionHierarchy hierarchy) {
+        this.hierarchy = hierarchy;
+    }
+
+    // Hierarchy matching this graph version, contracting the graph on first use
+    public ContractionHierarchy getContractionHierarchy(CampusGraph graph) {
+        if (graph.isDetached()) {
+            return ContractionHierarchy.build(graph);  // Used once, so not worth keeping
+        }
+        ContractionHierarchy current = hierarchy;
+        if (current == null || current.getGraphVersion() != graph.getVersion()) {
+            synchronized (this) {
+                current = hierarchy;
+                if (current == null || current.getGraphVersion() != graph.getVersion()) {
+                    current = ContractionHierarchy.build(graph);
+                    hierarchy = current;
+                }
             }
+        }
+        return current;
+    }
 
-            if (current.distance == Double.MAX_VALUE) {
-                break;  // Unreachable
+    // Landmark tables matching this graph version, computed on first use
+    public LandmarkHeuristic getLandmarkHeuristic(CampusGraph graph) {
+        if (graph.isDetached()) {
+            return LandmarkHeuristic.build(graph, LandmarkHeuristic.DEFAULT_LANDMARK_COUNT);  // Used once
+        }
+        LandmarkHeuristic current = landmarkHeuristic;
+        if (current == null || current.getGraphVersion() != graph.getVersion()) {
+            synchronized (this) {
+                current = landmarkHeuristic;
+                if (current == null || current.getGraphVersion() != graph.getVersion()) {
+                    current = LandmarkHeuristic.build(graph, LandmarkHeuristic.DEFAULT_LANDMARK_COUNT);
+                    landmarkHeuristic = current;
+                }
             }
+        }
+        return current;
+    }
 
-            // Explore neighbors
-            Map<String, Double> neighbors = graph.get(current.name);
-            if (neighbors != null) {
-                for (Map.Entry<String, Double> neighbor : neighbors.entrySet()) {
-                    double newDist = distances.get(current.name) + neighbor.getValue();
+    // Contraction Hierarchies query; shortcuts are unpacked so the route lists every stop
+    private RouteOption hierarchySearch(CampusGraph graph, int start, int destination) {
+        ContractionHierarchy.Result result = getContractionHierarchy(graph).query(start, destination);
+        if (result == null) {
+            return null;
+        }
 
-                    if (newDist < distances.get(neighbor.getKey())) {
+        List<String> path = new ArrayList<>();
+        for (int node : result.getNodes()) {
+            path.add(graph.nameOf(node));
+        }
+        return createRoute(graph, path, result.getDistance(), result.getSettledNodes());
+    }
+
+    // Dijkstra's algorithm for finding shortest path
+    private RouteOption dijkstraAlgorithm(CampusGraph graph, int start, int destination) {
+        // Indexed heap and per-node arrays come from this thread's reusable workspace;
+        // vertices enter the heap only once they are first reached
+        SearchWorkspace search = SearchWorkspace.acquire(graph.nodeCount());
+        try {
+            IndexedMinHeap priorityQueue = search.heap();
+
+            // Initialize
+            search.reach(start, 0.0, CampusGraph.NO_NODE);
+            priorityQueue.insert(start, 0.0);
+
+            int settled = 0;
+
+            // Process vertices
+            while (!priorityQueue.isEmpty()) {
+                int current = priorityQueue.pollMin();
+                search.settle(current);
+                settled++;
+
+                if (current == destination) {
+                    // Found destination, reconstruct path
+                    return constructRoute(graph, search, start, destination, settled);
+                }
+
+                // Explore neighbors
+                for (int e = graph.firstEdge(current); e < graph.firstEdge(current + 1); e++) {
+                    int neighbor = graph.edgeTarget(e);
+                    if (search.isSettled(neighbor)) {
+                        continue;
+                    }
+
+                    double newDist = search.distance(current) + graph.edgeWeight(e);
+
+                    if (!search.isReached(neighbor) || newDist < search.distance(neighbor)) {
                         // Found a better path
-                        distances.put(neighbor.getKey(), newDist);
-                        previous.put(neighbor.getKey(), current.name);
+                        search.reach(neighbor, newDist, current);
 
                         // Update priority queue
-                        priorityQueue.add(new Node(neighbor.getKey(), newDist));
+                        priorityQueue.insertOrDecrease(neighbor, newDist);
                     }
                 }
             }
-        }
 
-        return null;  // No path found
+            return null;  // No path found
+        } finally {
+            search.release();
+        }
     }
 
-    // A* algorithm for finding optimal path with heuristics
-    private RouteOption aStarAlgorithm(Map<String, Map<String, Double>> graph, String start, String destination) {
-        // This is a simplified A* implementation for the university campus
-        // In a real implementation, we'd use actual geographic coordinates for the heuristic
+    // A* algorithm for finding optimal path with heuristics; landmarks may be null
+    private RouteOption aStarAlgorithm(CampusGraph graph, int start, int destination,
+                                       LandmarkHeuristic landmarks) {
+        // Open set keyed by f = g + h; the workspace holds g-scores, cached heuristic values
+        // and previous nodes
+        SearchWorkspace search = SearchWorkspace.acquire(graph.nodeCount());
+        try {
+            IndexedMinHeap openSet = search.heap();
+
+            search.reach(start, 0.0, CampusGraph.NO_NODE);
+            search.setEstimate(start, estimate(start, destination, graph, landmarks));
+            openSet.insert(start, search.estimate(start));
+
+            int settled = 0;
+
+            while (!openSet.isEmpty()) {
+                int current = openSet.pollMin();
+                search.settle(current);
+                settled++;
+
+                if (current == destination) {
+                    // Found destination, reconstruct path
+                    return constructRoute(graph, search, start, destination, settled);
+                }
 
-        // Priority queue for processing vertices
-        PriorityQueue<Node> openSet = new PriorityQueue<>(
-                Comparator.comparingDouble(node -> node.distance + node.heuristic)
-        );
+                // Explore neighbors
+                for (int e = graph.firstEdge(current); e < graph.firstEdge(current + 1); e++) {
+                    int neighbor = graph.edgeTarget(e);
+                    double tentativeGScore = search.distance(current) + graph.edgeWeight(e);
+
+                    // A consistent heuristic never improves a settled node. Float rounding in the
+                    // landmark tables can break consistency by a hair, in which case the node reopens.
+                    if (!search.isReached(neighbor)) {
+                        search.setEstimate(neighbor, estimate(neighbor, destination, graph, landmarks));
+                    } else if (tentativeGScore >= search.distance(neighbor)) {
+                        continue;
+                    }
 
-        // Distance map (g-scores)
-        Map<String, Double> gScore = new HashMap<>();
+                    // Found a better path
+                    search.reach(neighbor, tentativeGScore, current);
 
-        // Previous node map for path reconstruction
-        Map<String, String> previous = new HashMap<>();
+                    // Add to open set, or move it up with its improved score
+                    openSet.insertOrDecrease(neighbor, tentativeGScore + search.estimate(neighbor));
+                }
+            }
 
-        // Initialize
-        for (String vertex : graph.keySet()) {
-            gScore.put(vertex, Double.MAX_VALUE);
-            previous.put(vertex, null);
+            return null;  // No path found
+        } finally {
+            search.release();
         }
+    }
 
-        gScore.put(start, 0.0);
-        openSet.add(new Node(start, 0.0, heuristic(start, destination, graph)));
+    // Bidirectional search: a forward search from start and a backward search (over incoming
+    // edges) from destination, always advancing the side with the smaller queue key.
+    // With useHeuristic the searches run on costs reduced by the average potential
+    // p(v) = (h(v, destination) - h(v, start)) / 2, which is consistent in both directions.
+    // Either way the best meeting distance mu is optimal once minKeyForward + minKeyBackward >= mu.
+    private RouteOption bidirectionalSearch(CampusGraph graph, int start, int destination, boolean useHeuristic) {
+        if (start == destination) {
+            return dijkstraAlgorithm(graph, start, destination);
+        }
 
-        while (!openSet.isEmpty()) {
-            Node current = openSet.poll();
+        // The backward side's parent is the next node towards the destination. Potentials are
+        // computed lazily and cached in the forward workspace's estimates.
+        SearchWorkspace forward = SearchWorkspace.acquire(graph.nodeCount());
+        SearchWorkspace backward = SearchWorkspace.acquire(graph.nodeCount());
+        try {
+            IndexedMinHeap forwardQueue = forward.heap();
+            IndexedMinHeap backwardQueue = backward.heap();
+            SearchWorkspace potentials = useHeuristic && graph.getHeuristicScale() > 0 ? forward : null;
 
-            if (current.name.equals(destination)) {
-                // Found destination, reconstruct path
-                return constructRoute(previous, gScore, start, destination);
-            }
+            forward.reach(start, 0.0, CampusGraph.NO_NODE);
+            forwardQueue.insert(start, potential(potentials, graph, start, start, destination));
 
-            // Explore neighbors
-            Map<String, Double> neighbors = graph.get(current.name);
-            if (neighbors != null) {
-                for (Map.Entry<String, Double> neighbor : neighbors.entrySet()) {
-                    double tentativeGScore = gScore.get(current.name) + neighbor.getValue();
+            backward.reach(destination, 0.0, CampusGraph.NO_NODE);
+            backwardQueue.insert(destination, -potential(potentials, graph, destination, start, destination));
 
-                    if (tentativeGScore < gScore.get(neighbor.getKey())) {
-                        // Found a better path
-                        previous.put(neighbor.getKey(), current.name);
-                        gScore.put(neighbor.getKey(), tentativeGScore);
-
-                        // Add to open set with updated score
-                        openSet.add(new Node(
-                                neighbor.getKey(),
-                                tentativeGScore,
-                                heuristic(neighbor.getKey(), destination, graph)
-                        ));
+            double best = Double.MAX_VALUE;
+            int meeting = CampusGraph.NO_NODE;
+            int settled = 0;
+
+            while (!forwardQueue.isEmpty() && !backwardQueue.isEmpty()) {
+                if (forwardQueue.minKey() + backwardQueue.minKey() >= best) {
+                    break;  // Neither frontier can lead to a shorter connection
+                }
+
+                if (forwardQueue.minKey() <= backwardQueue.minKey()) {
+                    int current = forwardQueue.pollMin();
+                    forward.settle(current);
+                    settled++;
+
+                    for (int e = graph.firstEdge(current); e < graph.firstEdge(current + 1); e++) {
+                        int neighbor = graph.edgeTarget(e);
+                        if (forward.isSettled(neighbor)) {
+                            continue;
+                        }
+
+                        double newDist = forward.distance(current) + graph.edgeWeight(e);
+                        if (!forward.isReached(neighbor) || newDist < forward.distance(neighbor)) {
+                            forward.reach(neighbor, newDist, current);
+                            forwardQueue.insertOrDecrease(neighbor,
+                                    newDist + potential(potentials, graph, neighbor, start, destination));
+                        }
+
+                        if (backward.isReached(neighbor)
+                                && forward.distance(neighbor) + backward.distance(neighbor) < best) {
+                            best = forward.distance(neighbor) + backward.distance(neighbor);
+                            meeting = neighbor;
+                        }
+                    }
+                } else {
+                    int current = backwardQueue.pollMin();
+                    backward.settle(current);
+                    settled++;
+
+                    for (int e = graph.firstReverseEdge(current); e < graph.firstReverseEdge(current + 1); e++) {
+                        int neighbor = graph.reverseEdgeSource(e);
+                        if (backward.isSettled(neighbor)) {
+                            continue;
+                        }
+
+                        double newDist = backward.distance(current) + graph.reverseEdgeWeight(e);
+                        if (!backward.isReached(neighbor) || newDist < backward.distance(neighbor)) {
+                            backward.reach(neighbor, newDist, current);
+                            backwardQueue.insertOrDecrease(neighbor,
+                                    newDist - potential(potentials, graph, neighbor, start, destination));
+                        }
+
+                        if (forward.isReached(neighbor)
+                                && forward.distance(neighbor) + backward.distance(neighbor) < best) {
+                            best = forward.distance(neighbor) + backward.distance(neighbor);
+                            meeting = neighbor;
+                        }
                     }
                 }
             }
+
+            if (meeting == CampusGraph.NO_NODE) {
+                return null;  // No path found
+            }
+
+            // Stitch start -> meeting (forward tree) and meeting -> destination (backward tree)
+            List<String> path = new ArrayList<>();
+            for (int node = meeting; node != CampusGraph.NO_NODE; node = forward.parent(node)) {
+                path.add(graph.nameOf(node));
+            }
+            Collections.reverse(path);
+            for (int node = backward.parent(meeting); node != CampusGraph.NO_NODE; node = backward.parent(node)) {
+                path.add(graph.nameOf(node));
+            }
+
+            return createRoute(graph, path, best, settled);
+        } finally {
+            backward.release();
+            forward.release();
+        }
+    }
+
+    // Average potential for bidirectional A*, or 0 when searching without a heuristic. A node
+    // that can't reach the destination, or can't be reached from the start, gets an infinite
+    // potential that queues it behind every node that can still lead to a route.
+    private double potential(SearchWorkspace cache, CampusGraph graph, int node, int start, int destination) {
+        if (cache == null) {
+            return 0;
+        }
+        if (!cache.hasEstimate(node)) {
+            StraightLineBound bound = graph.getStraightLineBound();
+            cache.setEstimate(node, (bound.toward(node, destination) - bound.from(start, node)) / 2);
         }
+        return cache.estimate(node);
+    }
 
-        return null;  // No path found
+    // Best available lower bound: the larger of the straight-line and landmark bounds
+    private double estimate(int node, int destination, CampusGraph graph, LandmarkHeuristic landmarks) {
+        double bound = graph.getStraightLineBound().toward(node, destination);
+        if (landmarks != null) {
+            bound = Math.max(bound, landmarks.lowerBound(node, destination));
+        }
+        return bound;
     }
 
-    // Simplified heuristic function (would use actual geographic coordinates in a real implementation)
-    private double heuristic(String start, String destination, Map<String, Map<String, Double>> graph) {
-        // This is a very simple heuristic
-        // In a real implementation, we'd use geographic distance
-        return 0;  // Equivalent to Dijkstra's for now
+    // Up to k shortest loopless routes, shortest first, using at most maxSettledNodes of search work
+    public List<RouteOption> findKShortestRoutes(String start, String destination, CampusGraph graph,
+                                                 int k, int maxSettledNodes) {
+        List<RouteOption> routes = new ArrayList<>();
+
+        int source = graph.idOf(start);
+        int target = graph.idOf(destination);
+        if (source == CampusGraph.NO_NODE || target == CampusGraph.NO_NODE) {
+            return routes;
+        }
+
+        for (KShortestPaths.Path path : new KShortestPaths(graph).find(source, target, k, maxSettledNodes)) {
+            routes.add(toRoute(graph, path));
+        }
+        return routes;
     }
 
-    // Add alternative routes using techniques like Vogel's Approximation Method
-    private void addAlternativeRoutes(List<RouteOption> routes, Map<String, Map<String, Double>> graph, String start, String destination) {
-        // Add a route that may pass through important landmarks
-        // For demonstration, we'll find a path through a random intermediate node
-
-        // First, get a random location that's not start or destination
-        List<String> potentialIntermediates = new ArrayList<>(graph.keySet());
-        potentialIntermediates.removeIf(loc -> loc.equals(start) || loc.equals(destination));
-
-        if (!potentialIntermediates.isEmpty()) {
-            // Choose a random intermediate location
-            String intermediate = potentialIntermediates.get(new Random().nextInt(potentialIntermediates.size()));
-
-            // Find path from start to intermediate
-            RouteOption firstLeg = dijkstraAlgorithm(graph, start, intermediate);
-
-            // Find path from intermediate to destination
-            RouteOption secondLeg = dijkstraAlgorithm(graph, intermediate, destination);
-
-            if (firstLeg != null && secondLeg != null) {
-                // Combine the two legs
-                List<String> combinedPath = new ArrayList<>(firstLeg.getPath());
-                // Remove the duplicate intermediate node
-                combinedPath.remove(combinedPath.size() - 1);
-                combinedPath.addAll(secondLeg.getPath());
-
-                // Calculate total distance and time
-                double totalDistance = firstLeg.getDistance() + secondLeg.getDistance();
-                int totalTime = firstLeg.getTime() + secondLeg.getTime();
-
-                // Combine landmarks
-                Set<String> combinedLandmarks = new HashSet<>(firstLeg.getLandmarks());
-                combinedLandmarks.addAll(secondLeg.getLandmarks());
-
-                // Create the combined route option
-                RouteOption alternativeRoute = new RouteOption(
-                        combinedPath,
-                        totalDistance,
-                        totalTime,
-                        new ArrayList<>(combinedLandmarks)
-                );
-
-                // Add to routes if it's different from existing routes
-                if (!routes.contains(alternativeRoute)) {
-                    routes.add(alternativeRoute);
-                }
-            }
+    // Alternatives findRoutes adds to the shortest route; 0 finds the shortest route alone,
+    // with the query's SearchMode
+    public void setAlternativeCount(int alternativeCount) {
+        this.alternativeCount = Math.max(0, alternativeCount);
+        if (routeCache != null) {
+            routeCache.clear();  // Cached results hold the old number of routes
         }
+    }
 
-        // Additional alternative routes could be added here
+    // Largest fraction of an alternative's length it may share with any route listed before it
+    public void setMaxOverlap(double maxOverlap) {
+        this.maxOverlap = maxOverlap;
+        if (routeCache != null) {
+            routeCache.clear();  // Cached results were filtered with the old threshold
+        }
     }
 
-    // Reconstruct the path from previous nodes map
-    private RouteOption constructRoute(Map<String, String> previous, Map<String, Double> distances, String start, String destination) {
+    // Shortest route read off a cached tree; no nodes are settled for it
+    private RouteOption treeRoute(CampusGraph graph, ShortestPathTree tree, int destination) {
+        int[] nodes = tree.path(destination);
+        if (nodes == null) {
+            return null;
+        }
+        List<String> names = new ArrayList<>();
+        for (int node : nodes) {
+            names.add(graph.nameOf(node));
+        }
+        return createRoute(graph, names, tree.distance(destination), 0);
+    }
+
+    private RouteOption toRoute(CampusGraph graph, KShortestPaths.Path path) {
+        List<String> names = new ArrayList<>();
+        for (int node : path.getNodes()) {
+            names.add(graph.nameOf(node));
+        }
+        return createRoute(graph, names, path.getDistance(), path.getSettledNodes());
+    }
+
+    // Reconstruct the path from the workspace's previous nodes
+    private RouteOption constructRoute(CampusGraph graph, SearchWorkspace search,
+                                       int start, int destination, int settled) {
         List<String> path = new ArrayList<>();
-        String current = destination;
+        int current = destination;
 
-        while (current != null) {
-            path.add(0, current);
-            current = previous.get(current);
+        while (current != CampusGraph.NO_NODE) {
+            path.add(graph.nameOf(current));
+            current = search.parent(current);
         }
+        Collections.reverse(path);
 
         // Check if path is valid
-        if (path.isEmpty() || !path.get(0).equals(start)) {
+        if (path.isEmpty() || !path.get(0).equals(graph.nameOf(start))) {
             return null;
         }
 
-        // Calculate distance
-        double distance = distances.get(destination);
+        return createRoute(graph, path, search.distance(destination), settled);
+    }
 
+    // Wrap a finished path into a RouteOption with time estimate and landmarks
+    RouteOption createRoute(CampusGraph graph, List<String> path, double distance, int settled) {
         // Estimate time (assuming average walking speed)
         int time = (int) Math.ceil(distance / 60);  // Simple estimate: 60m per minute
 
         // Create a list of landmarks along the route (simplified version)
         List<String> landmarks = identifyLandmarks(path);
 
-        return new RouteOption(path, distance, time, landmarks);
+        return new RouteOption(path, distance, time, landmarks, graph.getVersion(), settled);
     }
 
     // Identify landmarks along a route
@@ -245,23 +572,4 @@ public class RouteFinder {
 
         return landmarks;
     }
-
-    // Helper class for nodes in path-finding algorithms
-    private static class Node {
-        String name;
-        double distance;
-        double heuristic;
-
-        Node(String name, double distance) {
-            this.name = name;
-            this.distance = distance;
-            this.heuristic = 0;
-        }
-
-        Node(String name, double distance, double heuristic) {
-            this.name = name;
-            this.distance = distance;
-            this.heuristic = heuristic;
-        }
-    }
 }
\ No newline at end of file
@@ -8,12 +8,25 @@ public class RouteOption {
     private final double distance;
     private final int time;
     private final List<String> landmarks;
+    private final long graphVersion;
+    private final int settledNodes;
 
     public RouteOption(List<String> path, double distance, int time, List<String> landmarks) {
+        this(path, distance, time, landmarks, 0);
+    }
+
+    public RouteOption(List<String> path, double distance, int time, List<String> landmarks, long graphVersion) {
+        this(path, distance, time, landmarks, graphVersion, 0);
+    }
+
+    public RouteOption(List<String> path, double distance, int time, List<String> landmarks,
+                       long graphVersion, int settledNodes) {
         this.path = path;
         this.distance = distance;
         this.time = time;
         this.landmarks = landmarks;
+        this.graphVersion = graphVersion;
+        this.settledNodes = settledNodes;
     }
 
     public List<String> getPath() {
@@ -32,6 +45,16 @@ public class RouteOption {
         return landmarks;
     }
 
+    // Version of the CampusGraph this route was computed on (0 if unknown)
+    public long getGraphVersion() {
+        return graphVersion;
+    }
+
+    // Number of nodes the search settled to produce this route (0 if not recorded)
+    public int getSettledNodes() {
+        return settledNodes;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
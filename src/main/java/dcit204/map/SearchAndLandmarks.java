@@ -3,72 +3,153 @@ package dcit204.map;
 import java.util.*;
 
 public class SearchAndLandmarks {
-    private final RouteFinder routeFinder = new RouteFinder();
+    private final RouteFinder routeFinder;
     private final DistanceCalculator distanceCalculator = new DistanceCalculator();
+    private final TourPlanner tourPlanner = new TourPlanner();
 
-    // Find routes that pass through or near a specific landmark
-    public List<RouteOption> findRoutesByLandmark(String landmark, Map<String, Map<String, Double>> graph) {
-        List<RouteOption> routes = new ArrayList<>();
-
-        // Get all locations
-        List<String> allLocations = new ArrayList<>(graph.keySet());
+    // Optional result cache, also used for the individual legs; null computes every query
+    private final RouteCache routeCache;
 
-        // Generate some sample routes passing through the landmark
-        for (int i = 0; i < Math.min(3, allLocations.size()); i++) {
-            String start = getRandomLocation(allLocations, landmark);
-            String end = getRandomLocation(allLocations, start, landmark);
+    // Routes sampled per landmark by findRoutesByLandmark
+    private static final int VIA_LANDMARK_SAMPLES = 3;
+    private static final int MAX_VIA_INDEXES = 8;
 
-            // Find a route from start to landmark
-            List<RouteOption> firstLegRoutes = routeFinder.findRoutes(start, landmark, graph);
+    // Via-landmark trees for the most recently used landmarks
+    private final Map<String, ViaLandmarkIndex> viaIndexes =
+            new LinkedHashMap<String, ViaLandmarkIndex>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, ViaLandmarkIndex> eldest) {
+                    return size() > MAX_VIA_INDEXES;
+                }
+            };
 
-            // Find a route from landmark to end
-            List<RouteOption> secondLegRoutes = routeFinder.findRoutes(landmark, end, graph);
+    public SearchAndLandmarks() {
+        this(null);
+    }
 
-            if (!firstLegRoutes.isEmpty() && !secondLegRoutes.isEmpty()) {
-                // Combine the routes
-                RouteOption firstLeg = firstLegRoutes.get(0);
-                RouteOption secondLeg = secondLegRoutes.get(0);
+    public SearchAndLandmarks(RouteCache routeCache) {
+        this(routeCache, null);
+    }
 
-                List<String> combinedPath = new ArrayList<>(firstLeg.getPath());
-                // Remove the duplicate landmark node
-                combinedPath.remove(combinedPath.size() - 1);
-                combinedPath.addAll(secondLeg.getPath());
+    public SearchAndLandmarks(RouteCache routeCache, ShortestPathTreeCache treeCache) {
+        this.routeCache = routeCache;
+        this.routeFinder = new RouteFinder(routeCache, treeCache);
+    }
 
-                double totalDistance = firstLeg.getDistance() + secondLeg.getDistance();
-                int totalTime = firstLeg.getTime() + secondLeg.getTime();
+    // Find routes that pass through or near a specific landmark
+    public List<RouteOption> findRoutesByLandmark(String landmark, Map<String, Map<String, Double>> graph) {
+        return findRoutesByLandmark(landmark, CampusGraph.fromMap(graph));
+    }
 
-                Set<String> combinedLandmarks = new HashSet<>(firstLeg.getLandmarks());
-                combinedLandmarks.addAll(secondLeg.getLandmarks());
-                combinedLandmarks.add(landmark); // Ensure the selected landmark is included
+    // Find routes that pass through or near a specific landmark on the compact graph.
+    // The samples are the best routes through the landmark between the places closest to it
+    // on either side, so the same graph always gives the same routes.
+    public List<RouteOption> findRoutesByLandmark(String landmark, CampusGraph graph) {
+        List<RouteOption> routes = new ArrayList<>();
+        ViaLandmarkIndex index = getViaLandmarkIndex(landmark, graph);
+        if (index == null) {
+            return routes;
+        }
 
-                routes.add(new RouteOption(
-                        combinedPath,
-                        totalDistance,
-                        totalTime,
-                        new ArrayList<>(combinedLandmarks)
-                ));
+        int[] origins = index.nearest(VIA_LANDMARK_SAMPLES, true);
+        int[] destinations = index.nearest(VIA_LANDMARK_SAMPLES + 1, false);
+
+        // Pair each origin with the closest destination not used yet and different from it
+        Set<Integer> used = new HashSet<>();
+        for (int origin : origins) {
+            for (int destination : destinations) {
+                if (destination != origin && used.add(destination)) {
+                    RouteOption route = viaRoute(index, origin, destination, graph);
+                    if (route != null) {
+                        routes.add(route);
+                    }
+                    break;
+                }
             }
         }
 
         return routes;
     }
 
-    // Get a random location that's not the excluded locations
-    private String getRandomLocation(List<String> locations, String... exclude) {
-        List<String> available = new ArrayList<>(locations);
+    // Best route from start to end that passes through the landmark, or null if there is none
+    public RouteOption findRouteViaLandmark(String start, String landmark, String end, CampusGraph graph) {
+        int origin = graph.idOf(start);
+        int destination = graph.idOf(end);
+        ViaLandmarkIndex index = getViaLandmarkIndex(landmark, graph);
+        if (index == null || origin == CampusGraph.NO_NODE || destination == CampusGraph.NO_NODE) {
+            return null;
+        }
+        return viaRoute(index, origin, destination, graph);
+    }
+
+    // Index for this landmark and graph version, built on first use and kept for a few landmarks
+    private ViaLandmarkIndex getViaLandmarkIndex(String landmark, CampusGraph graph) {
+        int node = graph.idOf(landmark);
+        if (node == CampusGraph.NO_NODE) {
+            return null;
+        }
+        if (graph.isDetached()) {
+            return ViaLandmarkIndex.build(graph, node);  // Used once, so not worth keeping
+        }
+
+        synchronized (viaIndexes) {
+            ViaLandmarkIndex index = viaIndexes.get(landmark);
+            if (index != null && index.getGraphVersion() == graph.getVersion()) {
+                return index;
+            }
+        }
 
-        for (String exclusion : exclude) {
-            available.remove(exclusion);
+        // Build outside the lock; a concurrent build of the same index just loses the race
+        ViaLandmarkIndex index = ViaLandmarkIndex.build(graph, node);
+        synchronized (viaIndexes) {
+            viaIndexes.put(landmark, index);
         }
+        return index;
+    }
 
-        if (available.isEmpty()) {
+    private RouteOption viaRoute(ViaLandmarkIndex index, int origin, int destination, CampusGraph graph) {
+        int[] nodes = index.path(origin, destination);
+        if (nodes == null) {
             return null;
         }
 
-        return available.get(new Random().nextInt(available.size()));
+        List<String> path = new ArrayList<>();
+        for (int node : nodes) {
+            path.add(graph.nameOf(node));
+        }
+        RouteOption route = routeFinder.createRoute(graph, path, index.distance(origin, destination), 0);
+
+        // Ensure the selected landmark is included
+        String landmark = graph.nameOf(index.getLandmark());
+        if (route.getLandmarks().contains(landmark)) {
+            return route;
+        }
+        List<String> landmarks = new ArrayList<>(route.getLandmarks());
+        landmarks.add(landmark);
+        return new RouteOption(path, route.getDistance(), route.getTime(), landmarks,
+                graph.getVersion(), route.getSettledNodes());
+    }
+
+    // Best matches for a prefix from a prebuilt index, most popular first
+    public List<String> searchLocationsByPrefix(String prefix, PrefixIndex index) {
+        return index.search(prefix, PrefixIndex.MAX_RESULTS);
     }
 
-    // Binary search to find a location by prefix
+    // Prefix matches first, then typo-tolerant ones ("Comonwealth"), without repeats
+    public List<String> searchLocations(String query, PrefixIndex prefixIndex, FuzzyIndex fuzzyIndex) {
+        List<String> results = new ArrayList<>(prefixIndex.search(query, PrefixIndex.MAX_RESULTS));
+        for (String name : fuzzyIndex.search(query, PrefixIndex.MAX_RESULTS)) {
+            if (results.size() == PrefixIndex.MAX_RESULTS) {
+                break;
+            }
+            if (!results.contains(name)) {
+                results.add(name);
+            }
+        }
+        return results;
+    }
+
+    // Prefix matches in an arbitrary list; scans the whole list, so prefer the indexed version
     public List<String> searchLocationsByPrefix(String prefix, List<String> locations) {
         List<String> results = new ArrayList<>();
 
@@ -89,6 +170,24 @@ public class SearchAndLandmarks {
     public List<RouteOption> findRoutesWithMultipleLandmarks(String start, String end,
                                                              List<String> requiredLandmarks,
                                                              Map<String, Map<String, Double>> graph) {
+        return findRoutesWithMultipleLandmarks(start, end, requiredLandmarks, CampusGraph.fromMap(graph));
+    }
+
+    // Find routes that pass through multiple specified landmarks on the compact graph
+    public List<RouteOption> findRoutesWithMultipleLandmarks(String start, String end,
+                                                             List<String> requiredLandmarks,
+                                                             CampusGraph graph) {
+        if (routeCache == null || graph.isDetached()) {
+            return computeRoutesWithMultipleLandmarks(start, end, requiredLandmarks, graph);
+        }
+        return routeCache.getOrCompute(
+                RouteCache.Key.viaLandmarks(start, end, requiredLandmarks, graph.getVersion()),
+                () -> computeRoutesWithMultipleLandmarks(start, end, requiredLandmarks, graph));
+    }
+
+    private List<RouteOption> computeRoutesWithMultipleLandmarks(String start, String end,
+                                                                 List<String> requiredLandmarks,
+                                                                 CampusGraph graph) {
         // Sort landmarks to optimize the path
         List<String> sortedLandmarks = optimizeLandmarkOrder(start, end, requiredLandmarks, graph);
 
@@ -141,7 +240,8 @@ public class SearchAndLandmarks {
 
         // Create combined route
         List<RouteOption> result = new ArrayList<>();
-        result.add(new RouteOption(fullPath, totalDistance, totalTime, requiredLandmarks));
+        result.add(new RouteOption(fullPath, totalDistance, totalTime, requiredLandmarks,
+                graph.getVersion()));
 
         // Generate alternative routes using different optimization strategies
         generateAlternativeRoutes(start, end, requiredLandmarks, graph, result);
@@ -152,7 +252,7 @@ public class SearchAndLandmarks {
     // Generate alternative routes to provide multiple options
     private void generateAlternativeRoutes(String start, String end,
                                            List<String> landmarks,
-                                           Map<String, Map<String, Double>> graph,
+                                           CampusGraph graph,
                                            List<RouteOption> results) {
         // Try different landmark orderings to generate alternative routes
         if (landmarks.size() <= 1) {
@@ -210,7 +310,8 @@ public class SearchAndLandmarks {
         }
 
         // Add the alternative route if it's different
-        RouteOption alternativeRoute = new RouteOption(fullPath, totalDistance, totalTime, landmarks);
+        RouteOption alternativeRoute = new RouteOption(fullPath, totalDistance, totalTime, landmarks,
+                graph.getVersion());
         if (!results.contains(alternativeRoute) && !fullPath.isEmpty()) {
             results.add(alternativeRoute);
         }
@@ -221,23 +322,14 @@ public class SearchAndLandmarks {
             List<String> greedyPath = new ArrayList<>();
             greedyPath.add(start);
 
-            Set<String> unvisited = new HashSet<>(landmarks);
+            List<String> unvisited = new ArrayList<>(new LinkedHashSet<>(landmarks));
             current = start;
             totalDistance = 0;
             totalTime = 0;
 
             while (!unvisited.isEmpty()) {
-                // Find nearest unvisited landmark
-                String nearest = null;
-                double minDistance = Double.MAX_VALUE;
-
-                for (String landmark : unvisited) {
-                    double distance = distanceCalculator.calculateDistance(current, landmark, graph);
-                    if (distance < minDistance) {
-                        minDistance = distance;
-                        nearest = landmark;
-                    }
-                }
+                // Find nearest unvisited landmark with one search from the current position
+                String nearest = nearestOf(current, unvisited, graph);
 
                 if (nearest != null) {
                     List<RouteOption> legRoutes = routeFinder.findRoutes(current, nearest, graph);
@@ -282,52 +374,61 @@ public class SearchAndLandmarks {
             }
 
             // Add the greedy route if it's different
-            RouteOption greedyRoute = new RouteOption(greedyPath, totalDistance, totalTime, landmarks);
+            RouteOption greedyRoute = new RouteOption(greedyPath, totalDistance, totalTime, landmarks,
+                    graph.getVersion());
             if (!results.contains(greedyRoute) && !greedyPath.isEmpty()) {
                 results.add(greedyRoute);
             }
         }
     }
 
-    // Optimize the order of landmarks to minimize total distance
+    // Optimize the order of landmarks to minimize total distance, end included.
+    // Landmarks that can't be reached from the start are left out, as before.
     private List<String> optimizeLandmarkOrder(String start, String end,
                                                List<String> landmarks,
-                                               Map<String, Map<String, Double>> graph) {
-        // This is a simplified version of the Traveling Salesman Problem
-        // For a small number of landmarks, we can use a greedy approach
-
-        List<String> result = new ArrayList<>();
-        Set<String> remaining = new HashSet<>(landmarks);
-        String current = start;
-
-        while (!remaining.isEmpty()) {
-            String next = null;
-            double minDistance = Double.MAX_VALUE;
-
-            // Find the closest unvisited landmark
-            for (String landmark : remaining) {
-                double distance = calculateApproximateDistance(current, landmark, graph);
-
-                if (distance < minDistance) {
-                    minDistance = distance;
-                    next = landmark;
-                }
-            }
-
-            if (next != null) {
-                result.add(next);
-                remaining.remove(next);
-                current = next;
-            } else {
-                break;
+                                               CampusGraph graph) {
+        List<String> unique = new ArrayList<>(new LinkedHashSet<>(landmarks));
+
+        // Leg matrix over start, the landmarks and end, by position
+        List<String> places = new ArrayList<>();
+        places.add(start);
+        places.addAll(unique);
+        places.add(end);
+        DistanceMatrix matrix = DistanceMatrix.build(graph, places);
+
+        List<Integer> reachable = new ArrayList<>();
+        for (int i = 1; i <= unique.size(); i++) {
+            if (matrix.distance(0, i) != Double.MAX_VALUE) {
+                reachable.add(i);
             }
         }
+        int[] stops = new int[reachable.size()];
+        for (int i = 0; i < stops.length; i++) {
+            stops[i] = reachable.get(i);
+        }
 
+        TourPlanner.Tour tour = tourPlanner.plan(matrix, 0, places.size() - 1, stops);
+
+        List<String> result = new ArrayList<>();
+        for (int index : tour.getOrder()) {
+            result.add(places.get(index));
+        }
         return result;
     }
 
-    // Calculate approximate distance between two points
-    private double calculateApproximateDistance(String from, String to, Map<String, Map<String, Double>> graph) {
-        return distanceCalculator.calculateDistance(from, to, graph);
+    // Closest reachable candidate from a location, using a single one-to-many search;
+    // ties go to the earlier candidate, and null means none is reachable
+    private String nearestOf(String from, List<String> candidates, CampusGraph graph) {
+        double[] distances = distanceCalculator.calculateDistances(from, candidates, graph);
+
+        String nearest = null;
+        double minDistance = Double.MAX_VALUE;
+        for (int i = 0; i < distances.length; i++) {
+            if (distances[i] < minDistance) {
+                minDistance = distances[i];
+                nearest = candidates.get(i);
+            }
+        }
+        return nearest;
     }
 }
\ No newline at end of file
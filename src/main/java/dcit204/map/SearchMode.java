@@ -0,0 +1,11 @@
+package dcit204.map;
+
+// Shortest-path algorithm used by RouteFinder for a single query
+public enum SearchMode {
+    DIJKSTRA,
+    A_STAR,
+    ALT,
+    BIDIRECTIONAL_DIJKSTRA,
+    BIDIRECTIONAL_A_STAR,
+    CONTRACTION_HIERARCHY
+}
@@ -0,0 +1,148 @@
+package dcit204.map;
+
+import java.util.*;
+
+// Reusable per-thread arrays for Dijkstra / A* style searches.
+// Distances, parents and heuristic values are only meaningful for nodes stamped with the
+// current epoch, so starting a new search is one counter increment instead of a pass over
+// every array; the heap is cleared in time proportional to what the last search left in it.
+// Searches that run on workspaces (routing, alternatives, k-shortest, hierarchy queries) thus
+// allocate nothing sized to the graph in steady state; only results that are graph-sized
+// themselves, such as standalone shortest-path trees for caching, still are.
+//
+// Each thread keeps a small pool: a search takes a workspace with acquire() and gives it
+// back with release(), so a search that needs two (bidirectional) or one nested inside
+// another simply gets a second workspace instead of clobbering the first.
+public class SearchWorkspace {
+    private static final ThreadLocal<ArrayDeque<SearchWorkspace>> POOL =
+            ThreadLocal.withInitial(ArrayDeque::new);
+
+    private final int capacity;
+    private final IndexedMinHeap heap;
+    private final double[] distances;
+    private final double[] estimates;
+    private final int[] parents;
+    private final int[] reachedStamp;
+    private final int[] settledStamp;
+    private final int[] estimatedStamp;
+    private final int[] markedStamp;
+    private final int[] settleOrder;
+    private int settledCount;
+    private int epoch;
+
+    private SearchWorkspace(int capacity) {
+        this.capacity = capacity;
+        heap = new IndexedMinHeap(capacity);
+        distances = new double[capacity];
+        estimates = new double[capacity];
+        parents = new int[capacity];
+        reachedStamp = new int[capacity];
+        settledStamp = new int[capacity];
+        estimatedStamp = new int[capacity];
+        markedStamp = new int[capacity];
+        settleOrder = new int[capacity];
+    }
+
+    // A cleared workspace for a graph with nodeCount nodes, owned by the caller until release()
+    static SearchWorkspace acquire(int nodeCount) {
+        SearchWorkspace workspace = POOL.get().pollFirst();
+        if (workspace == null || workspace.capacity < nodeCount) {
+            // Graphs only grow between versions, so an outgrown workspace is just dropped
+            workspace = new SearchWorkspace(nodeCount);
+        }
+        workspace.reset();
+        return workspace;
+    }
+
+    // Hand the workspace back to this thread's pool
+    void release() {
+        POOL.get().offerFirst(this);
+    }
+
+    // Start a new search on a workspace the caller keeps, e.g. one per step of a longer query
+    void restart() {
+        reset();
+    }
+
+    private void reset() {
+        heap.clear();
+        settledCount = 0;
+        epoch++;
+        if (epoch == 0) {
+            // Wrapped around after 2^32 searches; old stamps could collide with new ones
+            Arrays.fill(reachedStamp, 0);
+            Arrays.fill(settledStamp, 0);
+            Arrays.fill(estimatedStamp, 0);
+            Arrays.fill(markedStamp, 0);
+            epoch = 1;
+        }
+    }
+
+    IndexedMinHeap heap() {
+        return heap;
+    }
+
+    boolean isReached(int node) {
+        return reachedStamp[node] == epoch;
+    }
+
+    boolean isSettled(int node) {
+        return settledStamp[node] == epoch;
+    }
+
+    // Record a (better) tentative distance and the node it was reached from
+    void reach(int node, double distance, int parent) {
+        reachedStamp[node] = epoch;
+        distances[node] = distance;
+        parents[node] = parent;
+    }
+
+    // A node reopened and settled again (A* with a slightly inconsistent heuristic) keeps its
+    // first place in the settle order, so the order never holds more than one slot per node
+    void settle(int node) {
+        if (settledStamp[node] != epoch) {
+            settledStamp[node] = epoch;
+            settleOrder[settledCount++] = node;
+        }
+    }
+
+    // Distinct nodes settled so far in this search, in the order they were first settled
+    int settledCount() {
+        return settledCount;
+    }
+
+    int settledNode(int index) {
+        return settleOrder[index];
+    }
+
+    double distance(int node) {
+        return distances[node];
+    }
+
+    int parent(int node) {
+        return parents[node];
+    }
+
+    // Cached heuristic value, if one has been stored during this search
+    boolean hasEstimate(int node) {
+        return estimatedStamp[node] == epoch;
+    }
+
+    double estimate(int node) {
+        return estimates[node];
+    }
+
+    void setEstimate(int node, double value) {
+        estimatedStamp[node] = epoch;
+        estimates[node] = value;
+    }
+
+    // Free per-search flag, e.g. for the targets of a one-to-many search
+    void mark(int node) {
+        markedStamp[node] = epoch;
+    }
+
+    boolean isMarked(int node) {
+        return markedStamp[node] == epoch;
+    }
+}
@@ -0,0 +1,215 @@
+package dcit204.map;
+
+import java.util.Arrays;
+
+// Complete shortest-path tree rooted at one node.
+// A forward tree holds distances from the root to every node; a backward tree (built over
+// incoming edges) holds distances from every node to the root. Unreachable nodes have an
+// infinite distance and no parent. Nodes are also kept in the order the search settled
+// them, i.e. closest to the root first, so callers can visit just the reached part.
+//
+// The search itself runs on a pooled SearchWorkspace. A tree built with forward()/backward()
+// copies the result out and stands alone (for caching); one built on a caller's workspace
+// is a view of it, allocates nothing and is valid until that workspace is restarted or released.
+public class ShortestPathTree {
+    private final int root;
+    private final boolean forward;
+    private final int nodeCount;
+    private final int settledNodes;
+
+    // Standalone trees
+    private final double[] distances;
+    private final int[] parents;
+    private final int[] settleOrder;
+
+    // Views; null for standalone trees
+    private final SearchWorkspace workspace;
+
+    private ShortestPathTree(int root, boolean forward, int nodeCount, int settledNodes, double[] distances,
+                             int[] parents, int[] settleOrder, SearchWorkspace workspace) {
+        this.root = root;
+        this.forward = forward;
+        this.nodeCount = nodeCount;
+        this.settledNodes = settledNodes;
+        this.distances = distances;
+        this.parents = parents;
+        this.settleOrder = settleOrder;
+        this.workspace = workspace;
+    }
+
+    // Tree of shortest paths from source to every node
+    public static ShortestPathTree forward(CampusGraph graph, int source) {
+        return standalone(graph, source, true, Double.POSITIVE_INFINITY);
+    }
+
+    // Tree of shortest paths from every node to target
+    public static ShortestPathTree backward(CampusGraph graph, int target) {
+        return standalone(graph, target, false, Double.POSITIVE_INFINITY);
+    }
+
+    // Partial trees that stop once distances exceed maxDistance; farther nodes count as unreachable
+    public static ShortestPathTree forward(CampusGraph graph, int source, double maxDistance) {
+        return standalone(graph, source, true, maxDistance);
+    }
+
+    public static ShortestPathTree backward(CampusGraph graph, int target, double maxDistance) {
+        return standalone(graph, target, false, maxDistance);
+    }
+
+    // Trees kept in the caller's workspace, which is restarted first
+    static ShortestPathTree forward(CampusGraph graph, int source, double maxDistance, SearchWorkspace workspace) {
+        workspace.restart();
+        search(graph, source, true, maxDistance, workspace);
+        return new ShortestPathTree(source, true, graph.nodeCount(), workspace.settledCount(),
+                null, null, null, workspace);
+    }
+
+    static ShortestPathTree backward(CampusGraph graph, int target, double maxDistance, SearchWorkspace workspace) {
+        workspace.restart();
+        search(graph, target, false, maxDistance, workspace);
+        return new ShortestPathTree(target, false, graph.nodeCount(), workspace.settledCount(),
+                null, null, null, workspace);
+    }
+
+    // Forward tree in the caller's workspace grown until target is settled and then on to stretch
+    // times its distance, so the bound needs no search of its own; unbounded if target is unreachable
+    static ShortestPathTree forward(CampusGraph graph, int source, int target, double stretch,
+                                    SearchWorkspace workspace) {
+        workspace.restart();
+        seed(source, workspace);
+        grow(graph, true, Double.POSITIVE_INFINITY, target, workspace);
+        if (workspace.isSettled(target)) {
+            grow(graph, true, workspace.distance(target) * stretch, CampusGraph.NO_NODE, workspace);
+        }
+        return new ShortestPathTree(source, true, graph.nodeCount(), workspace.settledCount(),
+                null, null, null, workspace);
+    }
+
+    private static ShortestPathTree standalone(CampusGraph graph, int root, boolean forward, double maxDistance) {
+        int n = graph.nodeCount();
+        SearchWorkspace search = SearchWorkspace.acquire(n);
+        try {
+            search(graph, root, forward, maxDistance, search);
+
+            // Only settled nodes are final; tentative ones of a search that stopped early are dropped
+            double[] distances = new double[n];
+            int[] parents = new int[n];
+            int[] settleOrder = new int[search.settledCount()];
+            Arrays.fill(distances, Double.POSITIVE_INFINITY);
+            Arrays.fill(parents, CampusGraph.NO_NODE);
+            for (int i = 0; i < settleOrder.length; i++) {
+                int node = search.settledNode(i);
+                settleOrder[i] = node;
+                distances[node] = search.distance(node);
+                parents[node] = search.parent(node);
+            }
+            return new ShortestPathTree(root, forward, n, settleOrder.length, distances, parents, settleOrder, null);
+        } finally {
+            search.release();
+        }
+    }
+
+    // Dijkstra from root over outgoing (forward) or incoming edges, up to maxDistance
+    private static void search(CampusGraph graph, int root, boolean forward, double maxDistance,
+                               SearchWorkspace search) {
+        seed(root, search);
+        grow(graph, forward, maxDistance, CampusGraph.NO_NODE, search);
+    }
+
+    private static void seed(int root, SearchWorkspace search) {
+        search.reach(root, 0, CampusGraph.NO_NODE);
+        search.heap().insert(root, 0);
+    }
+
+    // Settle nodes up to maxDistance, or until stop has been settled and its edges relaxed; the
+    // queue stays in the workspace, so a later call carries on where this one ended
+    private static void grow(CampusGraph graph, boolean forward, double maxDistance, int stop,
+                             SearchWorkspace search) {
+        IndexedMinHeap queue = search.heap();
+        while (!queue.isEmpty() && queue.minKey() <= maxDistance) {
+            int current = queue.pollMin();
+            search.settle(current);
+
+            int first = forward ? graph.firstEdge(current) : graph.firstReverseEdge(current);
+            int last = forward ? graph.firstEdge(current + 1) : graph.firstReverseEdge(current + 1);
+            for (int e = first; e < last; e++) {
+                int neighbor = forward ? graph.edgeTarget(e) : graph.reverseEdgeSource(e);
+                if (search.isSettled(neighbor)) {
+                    continue;
+                }
+
+                double distance = search.distance(current)
+                        + (forward ? graph.edgeWeight(e) : graph.reverseEdgeWeight(e));
+                if (!search.isReached(neighbor) || distance < search.distance(neighbor)) {
+                    search.reach(neighbor, distance, current);
+                    queue.insertOrDecrease(neighbor, distance);
+                }
+            }
+            if (current == stop) {
+                return;
+            }
+        }
+    }
+
+    public int getRoot() {
+        return root;
+    }
+
+    public boolean isForward() {
+        return forward;
+    }
+
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    public int getSettledNodes() {
+        return settledNodes;
+    }
+
+    // The index-th reachable node by distance from (forward) or to (backward) the root;
+    // index 0 is the root itself
+    public int settledNode(int index) {
+        return workspace != null ? workspace.settledNode(index) : settleOrder[index];
+    }
+
+    // Distance from the root (forward) or to the root (backward); infinite if unreachable
+    public double distance(int node) {
+        if (workspace != null) {
+            return workspace.isSettled(node) ? workspace.distance(node) : Double.POSITIVE_INFINITY;
+        }
+        return distances[node];
+    }
+
+    public boolean isReachable(int node) {
+        return distance(node) != Double.POSITIVE_INFINITY;
+    }
+
+    // Previous node on the path from the root (forward) or next node towards the root (backward)
+    public int parent(int node) {
+        if (workspace != null) {
+            return workspace.isSettled(node) ? workspace.parent(node) : CampusGraph.NO_NODE;
+        }
+        return parents[node];
+    }
+
+    // Node path between the root and the given node, in travel order; null if unreachable
+    public int[] path(int node) {
+        if (!isReachable(node)) {
+            return null;
+        }
+
+        int length = 0;
+        for (int current = node; current != CampusGraph.NO_NODE; current = parent(current)) {
+            length++;
+        }
+
+        int[] path = new int[length];
+        int index = forward ? length - 1 : 0;
+        for (int current = node; current != CampusGraph.NO_NODE; current = parent(current)) {
+            path[index] = current;
+            index += forward ? -1 : 1;
+        }
+        return path;
+    }
+}
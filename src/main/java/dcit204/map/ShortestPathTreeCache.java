@@ -0,0 +1,160 @@
+package dcit204.map;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Full shortest-path trees for frequently used origins.
+// Once a source has been queried hotThreshold times its forward tree is built and kept, and
+// from then on a query from that source to any destination is just a walk up the parent
+// array. Trees are large (a distance and a parent per node), so they are charged against a
+// CacheBudget shared with the route cache and evicted least-recently-used across both.
+// Like RouteCache, everything is dropped as soon as a newer graph version is seen.
+public class ShortestPathTreeCache implements CacheBudget.Owner {
+    public static final int DEFAULT_HOT_THRESHOLD = 2;
+
+    // Sources whose query counts are tracked before the counts are reset
+    private static final int MAX_TRACKED_SOURCES = 4096;
+
+    private final CacheBudget budget;
+    private final int hotThreshold;
+    private final LinkedHashMap<Integer, Entry> trees = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Integer, Integer> queryCounts = new HashMap<>();
+    private long latestVersion = Long.MIN_VALUE;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public ShortestPathTreeCache(CacheBudget budget) {
+        this(budget, DEFAULT_HOT_THRESHOLD);
+    }
+
+    // hotThreshold: queries from a source before its tree is built (1 builds on first use)
+    public ShortestPathTreeCache(CacheBudget budget, int hotThreshold) {
+        if (budget == null) {
+            throw new IllegalArgumentException("A tree cache needs a budget to charge its trees to");
+        }
+        this.budget = budget;
+        this.hotThreshold = Math.max(1, hotThreshold);
+    }
+
+    private static final class Entry {
+        final ShortestPathTree tree;
+        final long graphVersion;
+        final CacheBudget.Charge charge;
+
+        Entry(ShortestPathTree tree, long graphVersion, CacheBudget.Charge charge) {
+            this.tree = tree;
+            this.graphVersion = graphVersion;
+            this.charge = charge;
+        }
+    }
+
+    // Tree rooted at source for this graph version, or null while the source is not yet hot.
+    // Only the latest version is cached; a reader still on an older one always gets null, and
+    // so does a detached graph, which is never asked for twice and must not flush the cache.
+    public ShortestPathTree get(CampusGraph graph, int source) {
+        if (graph.isDetached()) {
+            return null;
+        }
+        long version = graph.getVersion();
+        synchronized (budget) {
+            observeVersion(version);
+
+            Entry entry = trees.get(source);
+            if (entry != null && entry.graphVersion == version) {
+                hits.incrementAndGet();
+                budget.touch(entry.charge);
+                return entry.tree;
+            }
+            misses.incrementAndGet();
+            if (version != latestVersion) {
+                return null;
+            }
+
+            if (queryCounts.size() >= MAX_TRACKED_SOURCES) {
+                queryCounts.clear();
+            }
+            Integer count = queryCounts.get(source);
+            int queries = count == null ? 1 : count + 1;
+            if (queries < hotThreshold) {
+                queryCounts.put(source, queries);
+                return null;
+            }
+            queryCounts.remove(source);
+        }
+
+        // Build outside the lock; another thread may race us to it, and the later one wins
+        ShortestPathTree tree = ShortestPathTree.forward(graph, source);
+
+        synchronized (budget) {
+            observeVersion(version);
+            if (version == latestVersion) {
+                release(trees.remove(source));
+                CacheBudget.Charge charge = budget.charge(this, source, estimateBytes(graph));
+                trees.put(source, new Entry(tree, version, charge));
+            }
+        }
+        return tree;
+    }
+
+    public void clear() {
+        synchronized (budget) {
+            for (Entry entry : trees.values()) {
+                release(entry);
+            }
+            trees.clear();
+            queryCounts.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (budget) {
+            return trees.size();
+        }
+    }
+
+    // Called by the shared budget when it evicts one of our trees
+    @Override
+    public void evicted(Object key) {
+        if (trees.remove(key) != null) {
+            evictions.incrementAndGet();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ShortestPathTreeCache[trees=%d, hits=%d, misses=%d, evictions=%d]",
+                size(), getHits(), getMisses(), getEvictions());
+    }
+
+    private void observeVersion(long graphVersion) {
+        if (graphVersion > latestVersion) {
+            clear();
+            latestVersion = graphVersion;
+        }
+    }
+
+    private void release(Entry entry) {
+        if (entry != null) {
+            budget.release(entry.charge);
+        }
+    }
+
+    // A double distance, an int parent and a settle-order slot per node, plus headers
+    private static long estimateBytes(CampusGraph graph) {
+        return 16L * graph.nodeCount() + 64;
+    }
+}
@@ -0,0 +1,247 @@
+package dcit204.map;
+
+// Static 2-d tree over the nodes of a CampusGraph that have coordinates.
+// Points are projected to local equirectangular meters around the graph's mean latitude,
+// which is accurate enough for ranking neighbours at campus or city scale.
+// The tree is implicit: each subarray [lo, hi) stores its splitting node at the midpoint.
+public class SpatialIndex {
+    private final int[] nodes;
+    private final double[] xs;
+    private final double[] ys;
+    private final double cosLatitude;
+    private final double centerLatitude;
+    private final double centerLongitude;
+
+    public SpatialIndex(CampusGraph graph) {
+        int count = 0;
+        double latSum = 0;
+        double lonSum = 0;
+        for (int node = 0; node < graph.nodeCount(); node++) {
+            if (graph.hasCoordinates(node)) {
+                count++;
+                latSum += graph.latitude(node);
+                lonSum += graph.longitude(node);
+            }
+        }
+
+        this.centerLatitude = count == 0 ? Double.NaN : latSum / count;
+        this.centerLongitude = count == 0 ? Double.NaN : lonSum / count;
+        this.cosLatitude = count == 0 ? 1.0 : Math.cos(Math.toRadians(centerLatitude));
+
+        this.nodes = new int[count];
+        this.xs = new double[count];
+        this.ys = new double[count];
+
+        int i = 0;
+        for (int node = 0; node < graph.nodeCount(); node++) {
+            if (graph.hasCoordinates(node)) {
+                nodes[i] = node;
+                xs[i] = projectX(graph.longitude(node));
+                ys[i] = projectY(graph.latitude(node));
+                i++;
+            }
+        }
+
+        build(0, count, 0);
+    }
+
+    public int size() {
+        return nodes.length;
+    }
+
+    // Mean position of all indexed nodes, NaN if the index is empty
+    public double getCenterLatitude() {
+        return centerLatitude;
+    }
+
+    public double getCenterLongitude() {
+        return centerLongitude;
+    }
+
+    // Closest node to the point, or CampusGraph.NO_NODE if nothing is indexed
+    public int nearest(double latitude, double longitude) {
+        int[] result = nearest(latitude, longitude, 1);
+        return result.length == 0 ? CampusGraph.NO_NODE : result[0];
+    }
+
+    // Up to k node ids ordered from nearest to farthest
+    public int[] nearest(double latitude, double longitude, int k) {
+        k = Math.min(k, nodes.length);
+        if (k <= 0) {
+            return new int[0];
+        }
+
+        Search search = new Search(projectX(longitude), projectY(latitude), k);
+        search(search, 0, nodes.length, 0);
+
+        // The bounded heap holds the k best in arbitrary order; insertion-sort them by distance
+        int[] order = new int[search.size];
+        double[] keys = new double[search.size];
+        for (int i = 0; i < search.size; i++) {
+            int j = i;
+            while (j > 0 && keys[j - 1] > search.distances[i]) {
+                keys[j] = keys[j - 1];
+                order[j] = order[j - 1];
+                j--;
+            }
+            keys[j] = search.distances[i];
+            order[j] = nodes[search.slots[i]];
+        }
+        return order;
+    }
+
+    private double projectX(double longitude) {
+        return Math.toRadians(longitude) * cosLatitude * GeoMath.EARTH_RADIUS_METERS;
+    }
+
+    private double projectY(double latitude) {
+        return Math.toRadians(latitude) * GeoMath.EARTH_RADIUS_METERS;
+    }
+
+    // Arrange [lo, hi) so the median along the current axis sits at the midpoint
+    private void build(int lo, int hi, int depth) {
+        if (hi - lo <= 1) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        select(lo, hi - 1, mid, depth % 2 == 0 ? xs : ys);
+        build(lo, mid, depth + 1);
+        build(mid + 1, hi, depth + 1);
+    }
+
+    // Quickselect on slots [left, right] so that slot k holds the k-th smallest coordinate
+    private void select(int left, int right, int k, double[] axis) {
+        while (left < right) {
+            double pivot = axis[(left + right) >>> 1];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (axis[i] < pivot) {
+                    i++;
+                }
+                while (axis[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i, j);
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void swap(int a, int b) {
+        int node = nodes[a];
+        nodes[a] = nodes[b];
+        nodes[b] = node;
+        double x = xs[a];
+        xs[a] = xs[b];
+        xs[b] = x;
+        double y = ys[a];
+        ys[a] = ys[b];
+        ys[b] = y;
+    }
+
+    private void search(Search search, int lo, int hi, int depth) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+
+        double dx = xs[mid] - search.x;
+        double dy = ys[mid] - search.y;
+        search.offer(mid, dx * dx + dy * dy);
+
+        double delta = depth % 2 == 0 ? search.x - xs[mid] : search.y - ys[mid];
+        boolean leftFirst = delta < 0;
+
+        // Visit the side containing the query first, then the other side only if it can still help
+        if (leftFirst) {
+            search(search, lo, mid, depth + 1);
+        } else {
+            search(search, mid + 1, hi, depth + 1);
+        }
+        if (search.size < search.k || delta * delta < search.worst()) {
+            if (leftFirst) {
+                search(search, mid + 1, hi, depth + 1);
+            } else {
+                search(search, lo, mid, depth + 1);
+            }
+        }
+    }
+
+    // Bounded max-heap of the k closest slots seen so far
+    private static class Search {
+        final double x;
+        final double y;
+        final int k;
+        final int[] slots;
+        final double[] distances;
+        int size;
+
+        Search(double x, double y, int k) {
+            this.x = x;
+            this.y = y;
+            this.k = k;
+            this.slots = new int[k];
+            this.distances = new double[k];
+        }
+
+        double worst() {
+            return distances[0];
+        }
+
+        void offer(int slot, double distance) {
+            if (size < k) {
+                int i = size++;
+                slots[i] = slot;
+                distances[i] = distance;
+                while (i > 0) {
+                    int parent = (i - 1) / 2;
+                    if (distances[parent] >= distances[i]) {
+                        break;
+                    }
+                    swap(i, parent);
+                    i = parent;
+                }
+            } else if (distance < distances[0]) {
+                slots[0] = slot;
+                distances[0] = distance;
+                int i = 0;
+                while (true) {
+                    int largest = i;
+                    int left = 2 * i + 1;
+                    int right = left + 1;
+                    if (left < size && distances[left] > distances[largest]) {
+                        largest = left;
+                    }
+                    if (right < size && distances[right] > distances[largest]) {
+                        largest = right;
+                    }
+                    if (largest == i) {
+                        break;
+                    }
+                    swap(i, largest);
+                    i = largest;
+                }
+            }
+        }
+
+        private void swap(int a, int b) {
+            int slot = slots[a];
+            slots[a] = slots[b];
+            slots[b] = slot;
+            double distance = distances[a];
+            distances[a] = distances[b];
+            distances[b] = distance;
+        }
+    }
+}
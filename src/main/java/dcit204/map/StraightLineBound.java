@@ -0,0 +1,198 @@
+package dcit204.map;
+
+import java.util.*;
+
+// Straight-line lower bounds on graph distances, for the A* searches in RouteFinder.
+// The haversine distance is scaled by the largest factor s for which s * straight line never
+// exceeds a connection between two positioned nodes: a direct edge, or a detour through nodes
+// that have no position. Scaling keeps the bound admissible and consistent even where the
+// stored coordinates are only approximate.
+//
+// A node without a position (e.g. a custom place added by name) is bounded through its
+// anchors: the positioned nodes it reaches, or is reached from, through position-less nodes
+// only, plus the distance to them. So a few such nodes leave the bound intact for the rest
+// of the graph instead of switching it off. Anchor searches are capped; a graph whose
+// position-less regions are larger than that, or with no positions at all, gets scale 0.
+public class StraightLineBound {
+    // Position-less nodes one anchor search may settle before the bound gives up
+    private static final int MAX_ANCHOR_SEARCH = 256;
+
+    private final CampusGraph graph;
+    private final double scale;
+
+    // Per position-less node: anchors it reaches (out) or is reached from (in), and the
+    // distances to or from them; null for positioned nodes
+    private final int[][] outAnchors;
+    private final double[][] outDistances;
+    private final int[][] inAnchors;
+    private final double[][] inDistances;
+
+    public StraightLineBound(CampusGraph graph) {
+        this.graph = graph;
+        int n = graph.nodeCount();
+        outAnchors = new int[n][];
+        outDistances = new double[n][];
+        inAnchors = new int[n][];
+        inDistances = new double[n][];
+        scale = computeScale();
+    }
+
+    // 0 means no usable bound: A* then behaves like Dijkstra's
+    public double getScale() {
+        return scale;
+    }
+
+    // Lower bound on the distance from node to target. 0 for every node if the target has no
+    // position, which is trivially consistent; infinite if node can't reach any positioned node.
+    public double toward(int node, int target) {
+        if (scale == 0 || !graph.hasCoordinates(target)) {
+            return 0;
+        }
+        if (graph.hasCoordinates(node)) {
+            return straightLine(node, target);
+        }
+        double bound = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < outAnchors[node].length; i++) {
+            bound = Math.min(bound, outDistances[node][i] + straightLine(outAnchors[node][i], target));
+        }
+        return bound;
+    }
+
+    // Lower bound on the distance from source to node, the mirror image of toward()
+    public double from(int source, int node) {
+        if (scale == 0 || !graph.hasCoordinates(source)) {
+            return 0;
+        }
+        if (graph.hasCoordinates(node)) {
+            return straightLine(source, node);
+        }
+        double bound = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < inAnchors[node].length; i++) {
+            bound = Math.min(bound, straightLine(source, inAnchors[node][i]) + inDistances[node][i]);
+        }
+        return bound;
+    }
+
+    private double straightLine(int a, int b) {
+        return scale * GeoMath.haversine(graph.latitude(a), graph.longitude(a),
+                graph.latitude(b), graph.longitude(b));
+    }
+
+    private double computeScale() {
+        int n = graph.nodeCount();
+        boolean anyPosition = false;
+        double s = 1.0;
+
+        // Direct edges between positioned nodes
+        for (int node = 0; node < n; node++) {
+            if (!graph.hasCoordinates(node)) {
+                continue;
+            }
+            anyPosition = true;
+            for (int e = graph.firstEdge(node); e < graph.firstEdge(node + 1); e++) {
+                int target = graph.edgeTarget(e);
+                if (graph.hasCoordinates(target)) {
+                    s = limit(s, graph.edgeWeight(e), node, target);
+                }
+            }
+        }
+        if (!anyPosition) {
+            return 0;
+        }
+
+        // Anchors of the position-less nodes, then every detour u -> x ... -> w through them,
+        // which starts with an edge into its first position-less node x
+        SearchWorkspace search = SearchWorkspace.acquire(n);
+        try {
+            for (int node = 0; node < n; node++) {
+                if (graph.hasCoordinates(node)) {
+                    continue;
+                }
+                if (!findAnchors(node, true, search) || !findAnchors(node, false, search)) {
+                    return 0;
+                }
+            }
+        } finally {
+            search.release();
+        }
+
+        for (int node = 0; node < n; node++) {
+            if (graph.hasCoordinates(node)) {
+                continue;
+            }
+            for (int r = graph.firstReverseEdge(node); r < graph.firstReverseEdge(node + 1); r++) {
+                int from = graph.reverseEdgeSource(r);
+                if (!graph.hasCoordinates(from)) {
+                    continue;
+                }
+                for (int i = 0; i < outAnchors[node].length; i++) {
+                    double detour = graph.reverseEdgeWeight(r) + outDistances[node][i];
+                    s = limit(s, detour, from, outAnchors[node][i]);
+                }
+            }
+        }
+        return s;
+    }
+
+    // The scale lowered, if need be, so that it stretches the straight line from a to b to at
+    // most length
+    private double limit(double s, double length, int a, int b) {
+        double straightLine = GeoMath.haversine(graph.latitude(a), graph.longitude(a),
+                graph.latitude(b), graph.longitude(b));
+        return straightLine > 0 ? Math.min(s, length / straightLine) : s;
+    }
+
+    // Dijkstra from a position-less node over outgoing (or incoming) edges that only passes
+    // through position-less nodes; the positioned nodes it settles are the anchors. False if
+    // the search outgrows MAX_ANCHOR_SEARCH.
+    private boolean findAnchors(int root, boolean outgoing, SearchWorkspace search) {
+        search.restart();
+        IndexedMinHeap queue = search.heap();
+        search.reach(root, 0, CampusGraph.NO_NODE);
+        queue.insert(root, 0);
+
+        List<Integer> anchors = new ArrayList<>();
+        int expanded = 0;
+        while (!queue.isEmpty()) {
+            int current = queue.pollMin();
+            search.settle(current);
+            if (graph.hasCoordinates(current)) {
+                anchors.add(current);
+                continue;  // Paths beyond it are bounded through it
+            }
+            if (++expanded > MAX_ANCHOR_SEARCH) {
+                return false;
+            }
+
+            int first = outgoing ? graph.firstEdge(current) : graph.firstReverseEdge(current);
+            int last = outgoing ? graph.firstEdge(current + 1) : graph.firstReverseEdge(current + 1);
+            for (int e = first; e < last; e++) {
+                int neighbor = outgoing ? graph.edgeTarget(e) : graph.reverseEdgeSource(e);
+                if (search.isSettled(neighbor)) {
+                    continue;
+                }
+                double distance = search.distance(current)
+                        + (outgoing ? graph.edgeWeight(e) : graph.reverseEdgeWeight(e));
+                if (!search.isReached(neighbor) || distance < search.distance(neighbor)) {
+                    search.reach(neighbor, distance, current);
+                    queue.insertOrDecrease(neighbor, distance);
+                }
+            }
+        }
+
+        int[] nodes = new int[anchors.size()];
+        double[] distances = new double[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = anchors.get(i);
+            distances[i] = search.distance(nodes[i]);
+        }
+        if (outgoing) {
+            outAnchors[root] = nodes;
+            outDistances[root] = distances;
+        } else {
+            inAnchors[root] = nodes;
+            inDistances[root] = distances;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,232 @@
+package dcit204.map;
+
+import java.util.*;
+
+// Anytime local search that shortens a tour from a fixed start, through a set of stops, to a
+// fixed end. Two kinds of move are tried until none helps or the time budget runs out:
+//  - 2-opt: reverse a stretch of the tour, replacing two legs with two others;
+//  - Or-opt: move a run of one to three consecutive stops elsewhere, keeping its direction.
+// Only moves that create a leg to one of a stop's nearest neighbours are considered, which
+// keeps a pass near-linear in the number of stops. Leg costs may differ by direction: the
+// cost of reversing a stretch comes from prefix sums in both directions along the tour.
+//
+// Legs are read once from the distance matrix into a dense local array; unreachable legs are
+// given a large finite penalty so gains can still be compared.
+public class TourImprover {
+    public static final int DEFAULT_NEIGHBOURS = 8;
+
+    private static final int MAX_SEGMENT = 3;
+    private static final double UNREACHABLE = 1e12;
+    private static final double EPSILON = 1e-9;
+
+    private final DistanceMatrix matrix;
+    private final int neighbourCount;
+
+    public TourImprover(DistanceMatrix matrix) {
+        this(matrix, DEFAULT_NEIGHBOURS);
+    }
+
+    public TourImprover(DistanceMatrix matrix, int neighbourCount) {
+        this.matrix = matrix;
+        this.neighbourCount = Math.max(1, neighbourCount);
+    }
+
+    // Improved visiting order for the stops (matrix indices) between start and end; returns
+    // the best order found when the budget ran out or no move improved it any more
+    public int[] improve(int start, int end, int[] order, long budgetMillis) {
+        if (order.length < 2) {
+            return order.clone();
+        }
+        return new Search(start, end, order).run(System.nanoTime() + budgetMillis * 1_000_000L);
+    }
+
+    // State of one improvement run; local ids are 0 = start, 1..n = stops, n + 1 = end
+    private final class Search {
+        private final int[] points;
+        private final int size;
+        private final double[] legs;
+        private final int[][] neighbours;
+
+        // tour[position] = local id, position[local id] = position
+        private final int[] tour;
+        private final int[] position;
+        private final double[] forward;
+        private final double[] backward;
+
+        Search(int start, int end, int[] order) {
+            size = order.length + 2;
+            points = new int[size];
+            points[0] = start;
+            System.arraycopy(order, 0, points, 1, order.length);
+            points[size - 1] = end;
+
+            legs = new double[size * size];
+            for (int i = 0; i < size; i++) {
+                for (int j = 0; j < size; j++) {
+                    double distance = matrix.distance(points[i], points[j]);
+                    legs[i * size + j] = distance == Double.MAX_VALUE ? UNREACHABLE : distance;
+                }
+            }
+            neighbours = nearestStops();
+
+            tour = new int[size];
+            position = new int[size];
+            for (int i = 0; i < size; i++) {
+                tour[i] = i;
+            }
+            forward = new double[size];
+            backward = new double[size];
+            refresh();
+        }
+
+        int[] run(long deadline) {
+            boolean improved = true;
+            while (improved && System.nanoTime() < deadline) {
+                improved = twoOpt(deadline) || orOpt(deadline);
+            }
+
+            int[] order = new int[size - 2];
+            for (int i = 1; i < size - 1; i++) {
+                order[i - 1] = points[tour[i]];
+            }
+            return order;
+        }
+
+        private double leg(int from, int to) {
+            return legs[from * size + to];
+        }
+
+        // For every point, the closest stops by the shorter of the two directions
+        private int[][] nearestStops() {
+            int[][] result = new int[size][];
+            Integer[] candidates = new Integer[size - 2];
+            for (int i = 0; i < size; i++) {
+                final int from = i;
+                for (int j = 0; j < candidates.length; j++) {
+                    candidates[j] = j + 1;
+                }
+                Arrays.sort(candidates, (a, b) -> Double.compare(
+                        Math.min(leg(from, a), leg(a, from)), Math.min(leg(from, b), leg(b, from))));
+
+                int count = Math.min(neighbourCount, candidates.length);
+                List<Integer> picked = new ArrayList<>(count);
+                for (int j = 0; j < candidates.length && picked.size() < count; j++) {
+                    if (candidates[j] != from) {
+                        picked.add(candidates[j]);
+                    }
+                }
+                result[i] = new int[picked.size()];
+                for (int j = 0; j < result[i].length; j++) {
+                    result[i][j] = picked.get(j);
+                }
+            }
+            return result;
+        }
+
+        // Rebuild positions and the prefix sums after a move
+        private void refresh() {
+            for (int i = 0; i < size; i++) {
+                position[tour[i]] = i;
+            }
+            forward[0] = 0;
+            backward[0] = 0;
+            for (int i = 1; i < size; i++) {
+                forward[i] = forward[i - 1] + leg(tour[i - 1], tour[i]);
+                backward[i] = backward[i - 1] + leg(tour[i], tour[i - 1]);
+            }
+        }
+
+        // First improving reversal of tour[i..j] that links tour[i - 1] to one of its neighbours
+        private boolean twoOpt(long deadline) {
+            for (int i = 1; i < size - 2; i++) {
+                if (System.nanoTime() >= deadline) {
+                    return false;
+                }
+                int before = tour[i - 1];
+                int first = tour[i];
+                for (int candidate : neighbours[before]) {
+                    int j = position[candidate];
+                    if (j <= i || j >= size - 1) {
+                        continue;
+                    }
+                    int after = tour[j + 1];
+                    double inside = (backward[j] - backward[i]) - (forward[j] - forward[i]);
+                    double delta = leg(before, candidate) + leg(first, after)
+                            - leg(before, first) - leg(candidate, after) + inside;
+                    if (delta < -EPSILON) {
+                        reverse(i, j);
+                        refresh();
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        // First improving move of a run of 1..MAX_SEGMENT stops next to a neighbour of its ends
+        private boolean orOpt(long deadline) {
+            for (int length = 1; length <= MAX_SEGMENT; length++) {
+                for (int i = 1; i + length < size; i++) {
+                    if (System.nanoTime() >= deadline) {
+                        return false;
+                    }
+                    int head = tour[i];
+                    int tail = tour[i + length - 1];
+
+                    // Insert after a neighbour of the head, or before a neighbour of the tail
+                    for (int candidate : neighbours[head]) {
+                        if (tryMove(i, length, position[candidate])) {
+                            return true;
+                        }
+                    }
+                    for (int candidate : neighbours[tail]) {
+                        if (tryMove(i, length, position[candidate] - 1)) {
+                            return true;
+                        }
+                    }
+                }
+            }
+            return false;
+        }
+
+        // Move tour[i .. i + length - 1] to between positions k and k + 1, if that is shorter
+        private boolean tryMove(int i, int length, int k) {
+            int last = i + length - 1;
+            if (k < 0 || k >= size - 1 || (k >= i - 1 && k <= last)) {
+                return false;
+            }
+
+            int before = tour[i - 1];
+            int after = tour[last + 1];
+            int head = tour[i];
+            int tail = tour[last];
+            int left = tour[k];
+            int right = tour[k + 1];
+
+            double removed = leg(before, head) + leg(tail, after) + leg(left, right);
+            double added = leg(before, after) + leg(left, head) + leg(tail, right);
+            if (added - removed >= -EPSILON) {
+                return false;
+            }
+
+            int[] segment = Arrays.copyOfRange(tour, i, last + 1);
+            if (k < i) {
+                System.arraycopy(tour, k + 1, tour, k + 1 + length, i - k - 1);
+                System.arraycopy(segment, 0, tour, k + 1, length);
+            } else {
+                System.arraycopy(tour, last + 1, tour, i, k - last);
+                System.arraycopy(segment, 0, tour, k - length + 1, length);
+            }
+            refresh();
+            return true;
+        }
+
+        private void reverse(int from, int to) {
+            while (from < to) {
+                int swap = tour[from];
+                tour[from++] = tour[to];
+                tour[to--] = swap;
+            }
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package dcit204.map;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+// Best order to visit a set of stops between a fixed start and end, over a leg matrix.
+// Up to MAX_EXACT_STOPS stops are solved exactly by Held-Karp dynamic programming:
+// cost[mask][j] is the shortest walk from the start through exactly the stops in mask,
+// ending at stop j. All masks with the same number of stops depend only on the layer
+// before, so each layer is filled in parallel. The table is one flat double[] of
+// 2^n * n entries (8 MB at 16 stops) with a parallel byte[] of predecessors.
+//
+// Larger sets start from nearest-neighbour ordering, which TourImprover then shortens with
+// 2-opt and Or-opt moves for as long as the time budget allows. Every tour has a lower bound
+// (the exact cost, or the minimum spanning tree over start, stops and end, which no path
+// through all of them can beat), so callers can see how far from optimal a tour may be.
+public class TourPlanner {
+    public static final int MAX_EXACT_STOPS = 16;
+    public static final long DEFAULT_IMPROVE_MILLIS = 50;
+
+    // Layers smaller than this are filled on the calling thread
+    private static final int PARALLEL_LAYER_SIZE = 1024;
+
+    private final ForkJoinPool pool;
+
+    public TourPlanner() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public TourPlanner(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    // A visiting order and what it costs
+    public static class Tour {
+        private final int[] order;
+        private final double cost;
+        private final double lowerBound;
+        private final boolean exact;
+
+        Tour(int[] order, double cost, double lowerBound, boolean exact) {
+            this.order = order;
+            this.cost = cost;
+            this.lowerBound = lowerBound;
+            this.exact = exact;
+        }
+
+        // Matrix indices of the stops in visiting order (start and end not included)
+        public int[] getOrder() {
+            return order.clone();
+        }
+
+        // Total leg distance from start through every stop to end; infinite if some leg is unreachable
+        public double getCost() {
+            return cost;
+        }
+
+        // No order can cost less than this
+        public double getLowerBound() {
+            return lowerBound;
+        }
+
+        public boolean isExact() {
+            return exact;
+        }
+
+        // cost / lowerBound: 1 for an exact tour, otherwise an upper limit on how far from optimal it is
+        public double getQualityRatio() {
+            if (cost == lowerBound) {
+                return 1;
+            }
+            return lowerBound > 0 ? cost / lowerBound : Double.POSITIVE_INFINITY;
+        }
+    }
+
+    // Order stops (matrix indices) to minimise the walk start -> stops -> end
+    public Tour plan(DistanceMatrix matrix, int start, int end, int[] stops) {
+        return plan(matrix, start, end, stops, DEFAULT_IMPROVE_MILLIS);
+    }
+
+    // As above; improveMillis limits local search on sets too large to solve exactly
+    public Tour plan(DistanceMatrix matrix, int start, int end, int[] stops, long improveMillis) {
+        if (stops.length <= MAX_EXACT_STOPS) {
+            return heldKarp(matrix, start, end, stops);
+        }
+
+        int[] order = nearestNeighbour(matrix, start, stops);
+        order = new TourImprover(matrix).improve(start, end, order, improveMillis);
+        return new Tour(order, cost(matrix, start, end, order), spanningTreeBound(matrix, start, end, stops), false);
+    }
+
+    private Tour heldKarp(DistanceMatrix matrix, int start, int end, int[] stops) {
+        int n = stops.length;
+        if (n == 0) {
+            double cost = leg(matrix, start, end);
+            return new Tour(new int[0], cost, cost, true);
+        }
+
+        // Leg distances between stops, and from the start / to the end
+        double[] between = new double[n * n];
+        double[] fromStart = new double[n];
+        double[] toEnd = new double[n];
+        for (int i = 0; i < n; i++) {
+            fromStart[i] = leg(matrix, start, stops[i]);
+            toEnd[i] = leg(matrix, stops[i], end);
+            for (int j = 0; j < n; j++) {
+                between[i * n + j] = leg(matrix, stops[i], stops[j]);
+            }
+        }
+
+        int full = (1 << n) - 1;
+        double[] cost = new double[(full + 1) * n];
+        byte[] previous = new byte[(full + 1) * n];
+        Arrays.fill(cost, Double.POSITIVE_INFINITY);
+        for (int j = 0; j < n; j++) {
+            cost[(1 << j) * n + j] = fromStart[j];
+            previous[(1 << j) * n + j] = -1;
+        }
+
+        for (int size = 2; size <= n; size++) {
+            int[] layer = masksWithBits(n, size);
+            if (layer.length < PARALLEL_LAYER_SIZE) {
+                for (int mask : layer) {
+                    extend(mask, n, between, cost, previous);
+                }
+            } else {
+                pool.submit(() -> IntStream.of(layer).parallel()
+                        .forEach(mask -> extend(mask, n, between, cost, previous))).join();
+            }
+        }
+
+        // Close the walk at the end
+        int last = 0;
+        double best = Double.POSITIVE_INFINITY;
+        for (int j = 0; j < n; j++) {
+            double total = cost[full * n + j] + toEnd[j];
+            if (total < best) {
+                best = total;
+                last = j;
+            }
+        }
+
+        // Walk the predecessors back from the full set
+        int[] order = new int[n];
+        int mask = full;
+        int current = last;
+        for (int position = n - 1; position >= 0; position--) {
+            order[position] = stops[current];
+            int before = previous[mask * n + current];
+            mask &= ~(1 << current);
+            current = before;
+        }
+        return new Tour(order, best, best, true);
+    }
+
+    // Fill cost[mask][j] for every j in mask from the layer below; each call writes only its own mask
+    private static void extend(int mask, int n, double[] between, double[] cost, byte[] previous) {
+        for (int j = 0; j < n; j++) {
+            if ((mask & (1 << j)) == 0) {
+                continue;
+            }
+            int rest = mask & ~(1 << j);
+            double best = Double.POSITIVE_INFINITY;
+            int bestPrevious = -1;
+            for (int i = 0; i < n; i++) {
+                if ((rest & (1 << i)) == 0) {
+                    continue;
+                }
+                double candidate = cost[rest * n + i] + between[i * n + j];
+                if (candidate < best) {
+                    best = candidate;
+                    bestPrevious = i;
+                }
+            }
+            if (bestPrevious < 0) {
+                bestPrevious = Integer.numberOfTrailingZeros(rest);  // Nothing reachable; any order will do
+            }
+            cost[mask * n + j] = best;
+            previous[mask * n + j] = (byte) bestPrevious;
+        }
+    }
+
+    // All n-bit masks with exactly size bits set, in increasing order (Gosper's hack)
+    private static int[] masksWithBits(int n, int size) {
+        int[] masks = new int[binomial(n, size)];
+        int mask = (1 << size) - 1;
+        for (int i = 0; i < masks.length; i++) {
+            masks[i] = mask;
+            int lowest = mask & -mask;
+            int ripple = mask + lowest;
+            mask = (((ripple ^ mask) >>> 2) / lowest) | ripple;
+        }
+        return masks;
+    }
+
+    private static int binomial(int n, int k) {
+        long result = 1;
+        for (int i = 1; i <= k; i++) {
+            result = result * (n - k + i) / i;
+        }
+        return (int) result;
+    }
+
+    // Greedy starting order: always walk to the closest stop not yet visited
+    private static int[] nearestNeighbour(DistanceMatrix matrix, int start, int[] stops) {
+        int n = stops.length;
+        boolean[] visited = new boolean[n];
+        int[] order = new int[n];
+        int current = start;
+
+        for (int position = 0; position < n; position++) {
+            int next = -1;
+            for (int i = 0; i < n; i++) {
+                if (!visited[i] && (next < 0 || leg(matrix, current, stops[i]) < leg(matrix, current, stops[next]))) {
+                    next = i;
+                }
+            }
+            visited[next] = true;
+            order[position] = stops[next];
+            current = stops[next];
+        }
+        return order;
+    }
+
+    // Length of the walk start -> order -> end
+    static double cost(DistanceMatrix matrix, int start, int end, int[] order) {
+        double cost = 0;
+        int current = start;
+        for (int stop : order) {
+            cost += leg(matrix, current, stop);
+            current = stop;
+        }
+        return cost + leg(matrix, current, end);
+    }
+
+    // Weight of a minimum spanning tree over start, stops and end, each pair weighted by the
+    // shorter of its two directions. A walk through all of them is a spanning tree itself.
+    static double spanningTreeBound(DistanceMatrix matrix, int start, int end, int[] stops) {
+        int[] points = new int[stops.length + 2];
+        points[0] = start;
+        points[1] = end;
+        System.arraycopy(stops, 0, points, 2, stops.length);
+
+        // Prim's algorithm on the dense graph
+        int m = points.length;
+        double[] attach = new double[m];
+        boolean[] inTree = new boolean[m];
+        Arrays.fill(attach, Double.POSITIVE_INFINITY);
+        attach[0] = 0;
+        double total = 0;
+
+        for (int step = 0; step < m; step++) {
+            int closest = -1;
+            for (int i = 0; i < m; i++) {
+                if (!inTree[i] && (closest < 0 || attach[i] < attach[closest])) {
+                    closest = i;
+                }
+            }
+            inTree[closest] = true;
+            total += attach[closest];
+            for (int i = 0; i < m; i++) {
+                if (!inTree[i]) {
+                    double weight = Math.min(leg(matrix, points[closest], points[i]),
+                            leg(matrix, points[i], points[closest]));
+                    attach[i] = Math.min(attach[i], weight);
+                }
+            }
+        }
+        return total;
+    }
+
+    // Matrix distance with unreachable pairs as infinity, so sums never look finite
+    static double leg(DistanceMatrix matrix, int from, int to) {
+        double distance = matrix.distance(from, to);
+        return distance == Double.MAX_VALUE ? Double.POSITIVE_INFINITY : distance;
+    }
+}
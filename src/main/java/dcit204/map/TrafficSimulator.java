@@ -1,14 +1,32 @@
 package dcit204.map;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Random;
 import java.time.LocalTime;
 import java.time.DayOfWeek;
 import java.time.LocalDateTime;
 
 public class TrafficSimulator {
-    private final Random random = new Random();
+    // Length of the linear ramp between two traffic levels, in minutes
+    private static final double RAMP_MINUTES = 30;
+
+    // Time-of-day and day-of-week multiplier for every 15-minute slot of the week
+    private final double[] timeFactors = compileTimeFactors();
+
+    // Travel time profiles for the latest graph version, built on first use, with that graph
+    // so the name-only methods can look places up in the node flags
+    private volatile Compiled compiled;
+
+    private static final class Compiled {
+        final CampusGraph graph;
+        final TravelTimeProfiles profiles;
+
+        Compiled(CampusGraph graph, TravelTimeProfiles profiles) {
+            this.graph = graph;
+            this.profiles = profiles;
+        }
+    }
 
     // Apply traffic conditions to adjust estimated travel times
     public List<RouteOption> applyTrafficConditions(List<RouteOption> routes) {
@@ -21,20 +39,176 @@ public class TrafficSimulator {
         for (RouteOption route : routes) {
             // Create a new route with adjusted time
             int adjustedTime = calculateAdjustedTime(route.getTime(), route.getPath(), dayOfWeek, timeOfDay);
+            adjustedRoutes.add(withTime(route, adjustedTime));
+        }
+
+        return adjustedRoutes;
+    }
+
+    // Route times for leaving at departure, summing each edge's travel time at the moment it
+    // is entered. Routes with a step that is not an edge of the graph fall back to scaling
+    // the whole route.
+    public List<RouteOption> applyTrafficConditions(List<RouteOption> routes, CampusGraph graph,
+                                                    LocalDateTime departure) {
+        TravelTimeProfiles travelTimes = getProfiles(graph);
+        double start = TravelTimeProfiles.minuteOfWeek(departure);
+        List<RouteOption> adjustedRoutes = new ArrayList<>();
 
-            adjustedRoutes.add(new RouteOption(
-                    route.getPath(),
-                    route.getDistance(),
-                    adjustedTime,
-                    route.getLandmarks()
-            ));
+        for (RouteOption route : routes) {
+            double minutes = travelMinutes(route.getPath(), graph, travelTimes, start);
+            int adjustedTime = Double.isNaN(minutes)
+                    ? scaledTime(route, graph, travelTimes, TravelTimeProfiles.slotOf(departure))
+                    : (int) Math.ceil(minutes);
+            adjustedRoutes.add(withTime(route, adjustedTime));
         }
 
         return adjustedRoutes;
     }
 
+    // Profiles matching this graph version, built from the traffic rules on first use
+    public TravelTimeProfiles getProfiles(CampusGraph graph) {
+        Compiled current = compiled;
+        if (current == null || current.profiles.getGraphVersion() != graph.getVersion()) {
+            synchronized (this) {
+                current = compiled;
+                if (current == null || current.profiles.getGraphVersion() != graph.getVersion()) {
+                    current = new Compiled(graph, buildProfiles(graph));
+                    compiled = current;
+                }
+            }
+        }
+        return current.profiles;
+    }
+
+    // The rules below compiled for one graph version: node flags for high-traffic areas, and
+    // week-long profiles for ordinary edges and, 20% slower, for edges touching such an area.
+    // Levels change over a short linear ramp rather than jumping, which keeps travel times
+    // continuous (and FIFO) for time-dependent routing.
+    TravelTimeProfiles buildProfiles(CampusGraph graph) {
+        TravelTimeProfiles.Builder builder = new TravelTimeProfiles.Builder(graph);
+        int normal = addRampedProfile(builder, 1.0);
+        int busy = addRampedProfile(builder, 1.2);
+
+        boolean[] highTraffic = new boolean[graph.nodeCount()];
+        for (int node = 0; node < graph.nodeCount(); node++) {
+            highTraffic[node] = isHighTrafficArea(graph.nameOf(node));
+            if (highTraffic[node]) {
+                builder.setNodeFlags(node, TravelTimeProfiles.FLAG_HIGH_TRAFFIC);
+            }
+        }
+        for (int node = 0; node < graph.nodeCount(); node++) {
+            for (int e = graph.firstEdge(node); e < graph.firstEdge(node + 1); e++) {
+                boolean isBusy = highTraffic[node] || highTraffic[graph.edgeTarget(e)];
+                builder.setEdgeProfile(e, isBusy ? busy : normal);
+            }
+        }
+        return builder.build();
+    }
+
+    // Levels must hold for at least RAMP_MINUTES so neighbouring ramps don't overlap. A level
+    // that holds for exactly that long ends one ramp where the next begins, and the two points
+    // at that minute, both at the level's factor, are merged into one.
+    private int addRampedProfile(TravelTimeProfiles.Builder builder, double areaFactor) {
+        int slots = timeFactors.length;
+        List<double[]> points = new ArrayList<>();
+        for (int slot = 0; slot < slots; slot++) {
+            double before = areaFactor * timeFactors[(slot + slots - 1) % slots];
+            double after = areaFactor * timeFactors[slot];
+            if (after != before) {
+                double boundary = slot * (double) TravelTimeProfiles.SLOT_MINUTES;
+                points.add(new double[]{TravelTimeProfiles.wrap(boundary - RAMP_MINUTES / 2), before});
+                points.add(new double[]{boundary + RAMP_MINUTES / 2, after});
+            }
+        }
+        if (points.isEmpty()) {
+            points.add(new double[]{0, areaFactor * timeFactors[0]});
+        }
+        points.sort((a, b) -> Double.compare(a[0], b[0]));
+
+        double[] minutes = new double[points.size()];
+        double[] factors = new double[points.size()];
+        int count = 0;
+        for (double[] point : points) {
+            if (count > 0 && point[0] == minutes[count - 1] && point[1] == factors[count - 1]) {
+                continue;
+            }
+            minutes[count] = point[0];
+            factors[count] = point[1];
+            count++;
+        }
+        return builder.addProfile(Arrays.copyOf(minutes, count), Arrays.copyOf(factors, count));
+    }
+
+    // Minutes to walk the path entering its first edge at minute start, or NaN if a step has no edge
+    private static double travelMinutes(List<String> path, CampusGraph graph, TravelTimeProfiles travelTimes,
+                                        double start) {
+        double clock = start;
+        for (int i = 0; i + 1 < path.size(); i++) {
+            int edge = graph.findEdge(graph.idOf(path.get(i)), graph.idOf(path.get(i + 1)));
+            if (edge < 0) {
+                return Double.NaN;
+            }
+            clock += travelTimes.travelTime(graph, edge, clock);
+        }
+        return clock - start;
+    }
+
+    private static RouteOption withTime(RouteOption route, int time) {
+        return new RouteOption(
+                route.getPath(),
+                route.getDistance(),
+                time,
+                route.getLandmarks(),
+                route.getGraphVersion(),
+                route.getSettledNodes()
+        );
+    }
+
+    // Whole-route scaling from the compiled tables: the slot's factor, and the area factor if
+    // any place on the route is flagged as high traffic
+    private int scaledTime(RouteOption route, CampusGraph graph, TravelTimeProfiles travelTimes, int slot) {
+        double trafficMultiplier = timeFactors[slot];
+        for (String location : route.getPath()) {
+            int node = graph.idOf(location);
+            if (node != CampusGraph.NO_NODE && travelTimes.isHighTraffic(node)) {
+                trafficMultiplier *= 1.2;
+                break;
+            }
+        }
+        return (int) Math.ceil(route.getTime() * trafficMultiplier);
+    }
+
     // Calculate adjusted time based on traffic conditions
     private int calculateAdjustedTime(int baseTime, List<String> path, DayOfWeek day, LocalTime time) {
+        int slot = (day.getValue() - 1) * TravelTimeProfiles.SLOTS_PER_DAY
+                + (time.getHour() * 60 + time.getMinute()) / TravelTimeProfiles.SLOT_MINUTES;
+        double trafficMultiplier = timeFactors[slot];
+
+        // Apply location-specific factors
+        for (String location : path) {
+            if (isHighTraffic(location)) {
+                trafficMultiplier *= 1.2;  // 20% slower in high traffic areas
+                break;  // Only apply once
+            }
+        }
+
+        return (int) Math.ceil(baseTime * trafficMultiplier);
+    }
+
+    // Evaluate the time rules once per slot, at its midpoint; all rule boundaries fall on slot edges
+    private double[] compileTimeFactors() {
+        double[] factors = new double[TravelTimeProfiles.SLOTS_PER_WEEK];
+        for (int slot = 0; slot < factors.length; slot++) {
+            DayOfWeek day = DayOfWeek.of(slot / TravelTimeProfiles.SLOTS_PER_DAY + 1);
+            int minute = (slot % TravelTimeProfiles.SLOTS_PER_DAY) * TravelTimeProfiles.SLOT_MINUTES
+                    + TravelTimeProfiles.SLOT_MINUTES / 2;
+            factors[slot] = timeFactor(day, LocalTime.of(minute / 60, minute % 60));
+        }
+        return factors;
+    }
+
+    // Time-of-day and day-of-week part of the traffic multiplier
+    private double timeFactor(DayOfWeek day, LocalTime time) {
         double trafficMultiplier = 1.0;
 
         // Apply time-of-day factor
@@ -49,18 +223,7 @@ public class TrafficSimulator {
             trafficMultiplier *= 0.9;  // 10% faster during weekends
         }
 
-        // Apply location-specific factors
-        for (String location : path) {
-            if (isHighTrafficArea(location)) {
-                trafficMultiplier *= 1.2;  // 20% slower in high traffic areas
-                break;  // Only apply once
-            }
-        }
-
-        // Apply some randomness (±10%)
-        trafficMultiplier *= (0.9 + random.nextDouble() * 0.2);
-
-        return (int) Math.ceil(baseTime * trafficMultiplier);
+        return trafficMultiplier;
     }
 
     // Check if it's rush hour
@@ -79,6 +242,17 @@ public class TrafficSimulator {
         return day == DayOfWeek.SATURDAY || day == DayOfWeek.SUNDAY;
     }
 
+    // Whether a place is flagged as high traffic in the latest compiled graph; before any
+    // graph has been compiled the name is checked against the rules directly
+    private boolean isHighTraffic(String location) {
+        Compiled current = compiled;
+        if (current == null) {
+            return isHighTrafficArea(location);
+        }
+        int node = current.graph.idOf(location);
+        return node != CampusGraph.NO_NODE && current.profiles.isHighTraffic(node);
+    }
+
     // Check if location is in a high traffic area
     private boolean isHighTrafficArea(String location) {
         return location.contains("Hall") || location.contains("Gate") ||
@@ -89,9 +263,10 @@ public class TrafficSimulator {
     public String getTrafficLevel(String location) {
         LocalTime time = LocalTime.now();
 
-        if (isHighTrafficArea(location) && isRushHour(time)) {
+        boolean highTraffic = isHighTraffic(location);
+        if (highTraffic && isRushHour(time)) {
             return "Heavy";
-        } else if (isHighTrafficArea(location) || isRushHour(time)) {
+        } else if (highTraffic || isRushHour(time)) {
             return "Moderate";
         } else {
             return "Light";
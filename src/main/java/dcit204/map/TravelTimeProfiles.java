@@ -0,0 +1,218 @@
+package dcit204.map;
+
+import java.time.LocalDateTime;
+import java.util.*;
+
+// Time-dependent travel times for the edges of one graph version.
+// A profile is a piecewise-linear multiplier over the week (Monday 00:00 = minute 0), given
+// by breakpoints and interpolated between them, wrapping around from Sunday to Monday. Every
+// edge points at one profile, and its travel time when entered at minute t is its walking
+// time at free flow times the profile's factor at t. Only a handful of distinct profiles
+// exist, so they are shared: all breakpoints sit in two float arrays indexed by profile
+// offsets, and edges store a profile number.
+//
+// At build time every profile is also sampled into a table of 15-minute slots (96 a day,
+// 672 a week), so looking up a factor is two array reads and a linear blend between slot
+// starts instead of a search over breakpoints. Breakpoints on slot boundaries (as all the
+// built-in traffic ramps are) are reproduced exactly. Nodes carry traffic bitflags too.
+//
+// Routing on these times with Dijkstra is exact as long as profiles are FIFO (entering an
+// edge later never gets you out earlier), which holds when factors change slowly compared
+// to the edge's travel time; campus paths take minutes, ramps take tens of minutes.
+public class TravelTimeProfiles {
+    public static final int MINUTES_PER_DAY = 24 * 60;
+    public static final int MINUTES_PER_WEEK = 7 * MINUTES_PER_DAY;
+    public static final int SLOT_MINUTES = 15;
+    public static final int SLOTS_PER_DAY = MINUTES_PER_DAY / SLOT_MINUTES;
+    public static final int SLOTS_PER_WEEK = 7 * SLOTS_PER_DAY;
+
+    // Node flag: the place is in a high-traffic area
+    public static final byte FLAG_HIGH_TRAFFIC = 1;
+
+    // Same walking speed estimate as RouteFinder's route times
+    public static final double METERS_PER_MINUTE = 60;
+
+    private final long graphVersion;
+    private final int[] profileOffsets;
+    private final float[] breakMinutes;
+    private final float[] breakFactors;
+    private final byte[] edgeProfiles;
+    private final byte[] nodeFlags;
+
+    // Factor at the start of every slot, profile-major
+    private final float[] slotFactors;
+
+    private TravelTimeProfiles(long graphVersion, int[] profileOffsets, float[] breakMinutes,
+                               float[] breakFactors, byte[] edgeProfiles, byte[] nodeFlags) {
+        this.graphVersion = graphVersion;
+        this.profileOffsets = profileOffsets;
+        this.breakMinutes = breakMinutes;
+        this.breakFactors = breakFactors;
+        this.edgeProfiles = edgeProfiles;
+        this.nodeFlags = nodeFlags;
+
+        slotFactors = new float[profileCount() * SLOTS_PER_WEEK];
+        for (int profile = 0; profile < profileCount(); profile++) {
+            for (int slot = 0; slot < SLOTS_PER_WEEK; slot++) {
+                slotFactors[profile * SLOTS_PER_WEEK + slot] = (float) breakpointFactor(profile, slot * SLOT_MINUTES);
+            }
+        }
+    }
+
+    public long getGraphVersion() {
+        return graphVersion;
+    }
+
+    public int profileCount() {
+        return profileOffsets.length - 1;
+    }
+
+    public int profileOf(int edge) {
+        return edgeProfiles[edge];
+    }
+
+    public byte flagsOf(int node) {
+        return nodeFlags[node];
+    }
+
+    public boolean isHighTraffic(int node) {
+        return (nodeFlags[node] & FLAG_HIGH_TRAFFIC) != 0;
+    }
+
+    // Minutes needed to walk the edge when entering it at minuteOfWeek (any real value; it wraps)
+    public double travelTime(CampusGraph graph, int edge, double minuteOfWeek) {
+        return graph.edgeWeight(edge) / METERS_PER_MINUTE * factor(edgeProfiles[edge], minuteOfWeek);
+    }
+
+    // Multiplier of a profile at a moment of the week, from the slot table
+    public double factor(int profile, double minuteOfWeek) {
+        double position = wrap(minuteOfWeek) / SLOT_MINUTES;
+        int slot = (int) position;
+        if (slot >= SLOTS_PER_WEEK) {
+            slot = SLOTS_PER_WEEK - 1;  // wrap() can round up to a hair below a full week
+        }
+        int base = profile * SLOTS_PER_WEEK;
+        double from = slotFactors[base + slot];
+        double to = slotFactors[base + (slot + 1 == SLOTS_PER_WEEK ? 0 : slot + 1)];
+        return from + (to - from) * (position - slot);
+    }
+
+    // Multiplier at the start of a slot (0 .. SLOTS_PER_WEEK - 1)
+    public double slotFactor(int profile, int slot) {
+        return slotFactors[profile * SLOTS_PER_WEEK + slot];
+    }
+
+    // Slot of the week a date and time falls in
+    public static int slotOf(LocalDateTime time) {
+        return (time.getDayOfWeek().getValue() - 1) * SLOTS_PER_DAY
+                + (time.getHour() * 60 + time.getMinute()) / SLOT_MINUTES;
+    }
+
+    // Exact piecewise-linear value from the breakpoints
+    private double breakpointFactor(int profile, double minuteOfWeek) {
+        double t = wrap(minuteOfWeek);
+        int first = profileOffsets[profile];
+        int last = profileOffsets[profile + 1] - 1;
+
+        if (first == last || t < breakMinutes[first] || t >= breakMinutes[last]) {
+            // Between the last breakpoint and the first one of the following week
+            return interpolate(breakMinutes[last], breakFactors[last],
+                    breakMinutes[first] + MINUTES_PER_WEEK, breakFactors[first],
+                    t < breakMinutes[first] ? t + MINUTES_PER_WEEK : t);
+        }
+
+        // Last breakpoint at or before t
+        int low = first;
+        int high = last;
+        while (high - low > 1) {
+            int middle = (low + high) >>> 1;
+            if (breakMinutes[middle] <= t) {
+                low = middle;
+            } else {
+                high = middle;
+            }
+        }
+        return interpolate(breakMinutes[low], breakFactors[low], breakMinutes[high], breakFactors[high], t);
+    }
+
+    // Minute of the week (with fractions) for a date and time
+    public static double minuteOfWeek(LocalDateTime time) {
+        return (time.getDayOfWeek().getValue() - 1) * MINUTES_PER_DAY
+                + time.getHour() * 60 + time.getMinute() + time.getSecond() / 60.0;
+    }
+
+    static double wrap(double minuteOfWeek) {
+        double t = minuteOfWeek % MINUTES_PER_WEEK;
+        return t < 0 ? t + MINUTES_PER_WEEK : t;
+    }
+
+    private static double interpolate(double x0, double y0, double x1, double y1, double x) {
+        if (x1 <= x0) {
+            return y0;
+        }
+        return y0 + (y1 - y0) * (x - x0) / (x1 - x0);
+    }
+
+    // Collects profiles and assigns them to edges; edges default to profile 0
+    public static class Builder {
+        private final CampusGraph graph;
+        private final List<double[]> minutes = new ArrayList<>();
+        private final List<double[]> factors = new ArrayList<>();
+        private final byte[] edgeProfiles;
+        private final byte[] nodeFlags;
+
+        public Builder(CampusGraph graph) {
+            this.graph = graph;
+            this.edgeProfiles = new byte[graph.edgeCount()];
+            this.nodeFlags = new byte[graph.nodeCount()];
+        }
+
+        // Add a profile from breakpoints sorted by minute of week; returns its number
+        public int addProfile(double[] breakMinutes, double[] breakFactors) {
+            if (breakMinutes.length == 0 || breakMinutes.length != breakFactors.length) {
+                throw new IllegalArgumentException("A profile needs matching, non-empty breakpoint arrays");
+            }
+            for (int i = 0; i < breakMinutes.length; i++) {
+                if (breakMinutes[i] < 0 || breakMinutes[i] >= MINUTES_PER_WEEK
+                        || (i > 0 && breakMinutes[i] <= breakMinutes[i - 1])) {
+                    throw new IllegalArgumentException("Breakpoints must be increasing minutes within one week");
+                }
+            }
+            if (minutes.size() > Byte.MAX_VALUE) {
+                throw new IllegalStateException("Too many travel time profiles");
+            }
+            minutes.add(breakMinutes.clone());
+            factors.add(breakFactors.clone());
+            return minutes.size() - 1;
+        }
+
+        public void setEdgeProfile(int edge, int profile) {
+            edgeProfiles[edge] = (byte) profile;
+        }
+
+        public void setNodeFlags(int node, byte flags) {
+            nodeFlags[node] = flags;
+        }
+
+        public TravelTimeProfiles build() {
+            if (minutes.isEmpty()) {
+                addProfile(new double[]{0}, new double[]{1});
+            }
+
+            int[] offsets = new int[minutes.size() + 1];
+            for (int p = 0; p < minutes.size(); p++) {
+                offsets[p + 1] = offsets[p] + minutes.get(p).length;
+            }
+            float[] breakMinutes = new float[offsets[minutes.size()]];
+            float[] breakFactors = new float[breakMinutes.length];
+            for (int p = 0; p < minutes.size(); p++) {
+                for (int i = 0; i < minutes.get(p).length; i++) {
+                    breakMinutes[offsets[p] + i] = (float) minutes.get(p)[i];
+                    breakFactors[offsets[p] + i] = (float) factors.get(p)[i];
+                }
+            }
+            return new TravelTimeProfiles(graph.getVersion(), offsets, breakMinutes, breakFactors,
+                    edgeProfiles.clone(), nodeFlags.clone());
+        }
+    }
+}
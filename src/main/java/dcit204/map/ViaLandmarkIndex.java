@@ -0,0 +1,108 @@
+package dcit204.map;
+
+import java.util.*;
+
+// Shortest routes that must pass through one landmark, for any origin and destination.
+// A backward tree gives every node's shortest path to the landmark and a forward tree the
+// landmark's shortest path to every node, so the best route origin -> landmark -> destination
+// is the two tree paths joined at the landmark. Building costs two full searches; every
+// query after that is a lookup and a walk up the parent arrays, with no randomness.
+public class ViaLandmarkIndex {
+    private final CampusGraph graph;
+    private final int landmark;
+    private final ShortestPathTree toLandmark;
+    private final ShortestPathTree fromLandmark;
+
+    private ViaLandmarkIndex(CampusGraph graph, int landmark) {
+        this.graph = graph;
+        this.landmark = landmark;
+        this.toLandmark = ShortestPathTree.backward(graph, landmark);
+        this.fromLandmark = ShortestPathTree.forward(graph, landmark);
+    }
+
+    public static ViaLandmarkIndex build(CampusGraph graph, int landmark) {
+        return new ViaLandmarkIndex(graph, landmark);
+    }
+
+    public int getLandmark() {
+        return landmark;
+    }
+
+    public long getGraphVersion() {
+        return graph.getVersion();
+    }
+
+    // Length of the best route from origin to destination through the landmark; infinite if none
+    public double distance(int origin, int destination) {
+        return toLandmark.distance(origin) + fromLandmark.distance(destination);
+    }
+
+    public double distanceToLandmark(int origin) {
+        return toLandmark.distance(origin);
+    }
+
+    public double distanceFromLandmark(int destination) {
+        return fromLandmark.distance(destination);
+    }
+
+    // Nodes of the best route through the landmark in travel order, or null if there is none
+    public int[] path(int origin, int destination) {
+        int[] head = toLandmark.path(origin);
+        int[] tail = fromLandmark.path(destination);
+        if (head == null || tail == null) {
+            return null;
+        }
+
+        int[] path = new int[head.length + tail.length - 1];
+        System.arraycopy(head, 0, path, 0, head.length);
+        System.arraycopy(tail, 1, path, head.length, tail.length - 1);
+        return path;
+    }
+
+    // Up to count nodes closest to the landmark, other than the landmark itself: the first
+    // entries of the tree's settle order, so the cost depends on count, not the graph size.
+    // towardLandmark picks by distance to the landmark, otherwise by distance from it.
+    public int[] nearest(int count, boolean towardLandmark) {
+        ShortestPathTree tree = towardLandmark ? toLandmark : fromLandmark;
+        int[] result = new int[Math.max(0, Math.min(count, tree.getSettledNodes() - 1))];
+        int found = 0;
+        for (int i = 0; found < result.length; i++) {
+            int node = tree.settledNode(i);
+            if (node != landmark) {
+                result[found++] = node;
+            }
+        }
+        return result;
+    }
+
+    // As above, but only among candidates (ties by id); keeps the best count in a small sorted
+    // array while scanning, so nothing is boxed or sorted in full
+    public int[] nearest(int[] candidates, int count, boolean towardLandmark) {
+        ShortestPathTree tree = towardLandmark ? toLandmark : fromLandmark;
+        int[] best = new int[Math.max(0, count)];
+        int found = 0;
+
+        for (int node : candidates) {
+            if (node == landmark || !tree.isReachable(node)) {
+                continue;
+            }
+            int position = found;
+            while (position > 0 && closer(tree, node, best[position - 1])) {
+                position--;
+            }
+            if (position >= best.length) {
+                continue;
+            }
+            int shifted = Math.min(found, best.length - 1) - position;
+            System.arraycopy(best, position, best, position + 1, shifted);
+            best[position] = node;
+            found = Math.min(found + 1, best.length);
+        }
+        return Arrays.copyOf(best, found);
+    }
+
+    private static boolean closer(ShortestPathTree tree, int a, int b) {
+        int byDistance = Double.compare(tree.distance(a), tree.distance(b));
+        return byDistance != 0 ? byDistance < 0 : a < b;
+    }
+}